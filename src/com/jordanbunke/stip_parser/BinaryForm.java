@@ -0,0 +1,227 @@
+package com.jordanbunke.stip_parser;
+
+import com.jordanbunke.delta_time.image.GameImage;
+import com.jordanbunke.stip_parser.rep.IRLayer;
+import com.jordanbunke.stip_parser.rep.IROnionSkin;
+import com.jordanbunke.stip_parser.rep.IRState;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+public final class BinaryForm {
+    private static final int MAGIC = 0x53544950, // "STIP"
+            VERSION = 1, NEW_IMAGE = -1;
+
+    public static void write(
+            final IRState state, final OutputStream out
+    ) throws IOException {
+        // the deflater's native memory is released here rather than by GC;
+        // 'out' itself is left open for the caller
+        final Deflater deflater = new Deflater();
+
+        try {
+            write(state, out, deflater);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void write(
+            final IRState state, final OutputStream out, final Deflater deflater
+    ) throws IOException {
+        final DeflaterOutputStream compressed =
+                new DeflaterOutputStream(out, deflater);
+        final DataOutputStream data = new DataOutputStream(
+                new BufferedOutputStream(compressed));
+
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+
+        data.writeInt(state.width());
+        data.writeInt(state.height());
+        data.writeInt(state.frameCount());
+
+        final double[] frameDurations = state.frameDurations();
+        data.writeInt(frameDurations.length);
+
+        for (double duration : frameDurations)
+            data.writeDouble(duration);
+
+        // shared cels (e.g. linked content) are written once and referenced
+        final Map<GameImage, Integer> written = new IdentityHashMap<>();
+        final IRLayer[] layers = state.layers();
+        data.writeInt(layers.length);
+
+        for (IRLayer layer : layers) {
+            data.writeUTF(layer.name());
+            data.writeDouble(layer.opacity());
+            data.writeBoolean(layer.enabled());
+            data.writeBoolean(layer.celsLinked());
+            data.writeBoolean(layer.onionSkinOn());
+            writeOnionSkin(layer.onionSkin(), data);
+
+            if (layer.celsLinked())
+                writeImage(layer.linkedContent(), written, data);
+            else {
+                final int frameCount = Math.min(
+                        state.frameCount(), layer.cels().length);
+                data.writeInt(frameCount);
+
+                for (int i = 0; i < frameCount; i++)
+                    writeImage(layer.getCel(i), written, data);
+            }
+        }
+
+        data.flush();
+        compressed.finish();
+    }
+
+    private static void writeOnionSkin(
+            final IROnionSkin os, final DataOutputStream data
+    ) throws IOException {
+        data.writeUTF(os.skinTypeBack().name());
+        data.writeUTF(os.skinTypeForward().name());
+        data.writeDouble(os.hueBack());
+        data.writeDouble(os.hueForward());
+        data.writeDouble(os.fadeFactorBack());
+        data.writeDouble(os.fadeFactorForward());
+        data.writeInt(os.lookBack());
+        data.writeInt(os.lookForward());
+        data.writeBoolean(os.underBack());
+        data.writeBoolean(os.underForward());
+    }
+
+    private static void writeImage(
+            final GameImage image, final Map<GameImage, Integer> written,
+            final DataOutputStream data
+    ) throws IOException {
+        final Integer reference = written.get(image);
+
+        if (reference != null) {
+            data.writeInt(reference);
+            return;
+        }
+
+        written.put(image, written.size());
+        data.writeInt(NEW_IMAGE);
+
+        final int w = image.getWidth(), h = image.getHeight();
+        data.writeInt(w);
+        data.writeInt(h);
+
+        final int[] argb = image.getRGB(0, 0, w, h, null, 0, w);
+        final ByteBuffer bytes = ByteBuffer.allocate(argb.length * Integer.BYTES);
+        bytes.asIntBuffer().put(argb);
+        data.write(bytes.array());
+    }
+
+    public static IRState read(final InputStream in) throws IOException {
+        final Inflater inflater = new Inflater();
+
+        try {
+            return read(in, inflater);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static IRState read(
+            final InputStream in, final Inflater inflater
+    ) throws IOException {
+        final DataInputStream data = new DataInputStream(
+                new BufferedInputStream(new InflaterInputStream(in, inflater)));
+
+        if (data.readInt() != MAGIC || data.readInt() != VERSION)
+            throw new IOException("Not a compact project of version " + VERSION);
+
+        final int w = data.readInt(), h = data.readInt(),
+                frameCount = data.readInt();
+
+        final double[] frameDurations = new double[data.readInt()];
+
+        for (int i = 0; i < frameDurations.length; i++)
+            frameDurations[i] = data.readDouble();
+
+        final List<GameImage> read = new ArrayList<>();
+        final IRLayer[] layers = new IRLayer[data.readInt()];
+
+        for (int l = 0; l < layers.length; l++) {
+            final String name = data.readUTF();
+            final double opacity = data.readDouble();
+            final boolean enabled = data.readBoolean(),
+                    celsLinked = data.readBoolean(),
+                    onionSkinOn = data.readBoolean();
+            final IROnionSkin os = readOnionSkin(data);
+
+            final GameImage linked;
+            final GameImage[] cels;
+
+            if (celsLinked) {
+                linked = readImage(read, data);
+                cels = new GameImage[frameCount];
+
+                for (int i = 0; i < frameCount; i++)
+                    cels[i] = linked;
+            } else {
+                cels = new GameImage[data.readInt()];
+
+                for (int i = 0; i < cels.length; i++)
+                    cels[i] = readImage(read, data);
+
+                linked = cels.length == 0 ? GameImage.dummy() : cels[0];
+            }
+
+            layers[l] = new IRLayer(name, cels, linked, opacity,
+                    enabled, celsLinked, onionSkinOn, os);
+        }
+
+        return new IRState(w, h, frameCount, frameDurations, layers);
+    }
+
+    private static IROnionSkin readOnionSkin(
+            final DataInputStream data
+    ) throws IOException {
+        return new IROnionSkin.Builder()
+                .setSkinTypeBack(IROnionSkin.SkinType.valueOf(data.readUTF()))
+                .setSkinTypeForward(IROnionSkin.SkinType.valueOf(data.readUTF()))
+                .setHueBack(data.readDouble())
+                .setHueForward(data.readDouble())
+                .setFadeFactorBack(data.readDouble())
+                .setFadeFactorForward(data.readDouble())
+                .setLookBack(data.readInt())
+                .setLookForward(data.readInt())
+                .setUnderBack(data.readBoolean())
+                .setUnderForward(data.readBoolean())
+                .build();
+    }
+
+    private static GameImage readImage(
+            final List<GameImage> read, final DataInputStream data
+    ) throws IOException {
+        final int reference = data.readInt();
+
+        if (reference != NEW_IMAGE)
+            return read.get(reference);
+
+        final int w = data.readInt(), h = data.readInt();
+        final byte[] bytes = new byte[w * h * Integer.BYTES];
+        data.readFully(bytes);
+
+        final int[] argb = new int[w * h];
+        ByteBuffer.wrap(bytes).asIntBuffer().get(argb);
+
+        final GameImage image = new GameImage(w, h);
+        image.setRGB(0, 0, w, h, argb, 0, w);
+        read.add(image);
+
+        return image.submit();
+    }
+}
@@ -0,0 +1,11 @@
+package com.jordanbunke.stip_parser;
+
+// A visitor that is told where each frame's image block lies in the input
+// instead of being given its decoded rows, so that it can be decoded later.
+// Positions are in chars of the input; inputs read as ISO-8859-1 therefore
+// give byte offsets into the file.
+interface FrameLocator extends StipVisitor {
+    // 'offset' is the first char of the block's value, and 'length' excludes
+    // its closer
+    void onFrameLocated(int layer, int frame, long offset, int length);
+}
@@ -0,0 +1,72 @@
+package com.jordanbunke.stip_parser;
+
+import com.jordanbunke.delta_time.image.GameImage;
+import com.jordanbunke.stip_parser.cache.CelCache;
+import com.jordanbunke.stip_parser.cache.CelKey;
+import com.jordanbunke.stip_parser.cache.FileIdentity;
+import com.jordanbunke.stip_parser.logic.ErrorSink;
+import com.jordanbunke.stip_parser.rep.CelSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+final class LazyCels implements CelSource {
+    private final Path filepath;
+    private final FileIdentity identity;
+    private final int layerIndex;
+    private final CelCache cache;
+    private final long[] offsets;
+    private final int[] lengths;
+
+    LazyCels(
+            final Path filepath, final FileIdentity identity,
+            final int layerIndex, final CelCache cache,
+            final long[] offsets, final int[] lengths
+    ) {
+        this.filepath = filepath;
+        this.identity = identity;
+        this.layerIndex = layerIndex;
+        this.cache = cache;
+        this.offsets = offsets;
+        this.lengths = lengths;
+    }
+
+    @Override
+    public GameImage getCel(final int index) {
+        return cache.get(new CelKey(identity, layerIndex, index),
+                () -> decode(index));
+    }
+
+    private GameImage decode(final int index) {
+        // offsets are stale if the file was modified after it was loaded
+        if (!identity.equals(FileIdentity.of(filepath))) {
+            ErrorSink.send("\"" + filepath +
+                    "\" changed on disk after it was loaded.");
+            return GameImage.dummy();
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(lengths[index]);
+
+        try (FileChannel channel = FileChannel.open(
+                filepath, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining())
+                if (channel.read(buffer, offsets[index] +
+                        buffer.position()) < 0)
+                    break;
+        } catch (IOException e) {
+            ErrorSink.send("Could not read frame " + index +
+                    " of layer " + layerIndex + " from \"" + filepath + "\".");
+            return GameImage.dummy();
+        }
+
+        final String contents = new String(buffer.array(), 0,
+                buffer.position(), StandardCharsets.ISO_8859_1);
+
+        return ParserSerializer.deserializeImage(
+                ParserSerializer.stripWhitespace(contents));
+    }
+}
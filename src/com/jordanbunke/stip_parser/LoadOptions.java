@@ -0,0 +1,103 @@
+package com.jordanbunke.stip_parser;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// 'layers' is null if every layer is included
+public record LoadOptions(
+        int frameFrom, int frameTo, Set<Integer> layers,
+        int regionX, int regionY, int regionWidth, int regionHeight,
+        int sampleWidth, int sampleHeight
+) {
+    private static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    public LoadOptions {
+        layers = layers == null ? null : Set.copyOf(layers);
+    }
+
+    public static LoadOptions all() {
+        return new Builder().build();
+    }
+
+    public boolean includesLayer(final int layer) {
+        return layers == null || layers.contains(layer);
+    }
+
+    // the size that a 'w' x 'h' region is reported at once it is fit
+    // within the sample size, preserving its aspect ratio
+    public int sampledWidth(final int w, final int h) {
+        return sampled(w, scale(w, h));
+    }
+
+    public int sampledHeight(final int w, final int h) {
+        return sampled(h, scale(w, h));
+    }
+
+    private double scale(final int w, final int h) {
+        return Math.min(1d, Math.min(sampleWidth / (double) w,
+                sampleHeight / (double) h));
+    }
+
+    private static int sampled(final int size, final double scale) {
+        return (int) Math.max(1L, Math.min(size, Math.round(size * scale)));
+    }
+
+    public static class Builder {
+        private int frameFrom, frameTo;
+        private Set<Integer> layers;
+        private int regionX, regionY, regionWidth, regionHeight;
+        private int sampleWidth, sampleHeight;
+
+        public Builder() {
+            frameFrom = 0;
+            frameTo = UNBOUNDED;
+            layers = null;
+
+            regionX = 0;
+            regionY = 0;
+            regionWidth = UNBOUNDED;
+            regionHeight = UNBOUNDED;
+
+            sampleWidth = UNBOUNDED;
+            sampleHeight = UNBOUNDED;
+        }
+
+        // 'to' is exclusive
+        public Builder setFrameRange(final int from, final int to) {
+            frameFrom = Math.max(0, from);
+            frameTo = Math.max(frameFrom, to);
+            return this;
+        }
+
+        public Builder setLayers(final int... layers) {
+            this.layers = Arrays.stream(layers).boxed()
+                    .collect(Collectors.toUnmodifiableSet());
+            return this;
+        }
+
+        public Builder setRegion(
+                final int x, final int y, final int width, final int height
+        ) {
+            regionX = Math.max(0, x);
+            regionY = Math.max(0, y);
+            regionWidth = Math.max(1, width);
+            regionHeight = Math.max(1, height);
+            return this;
+        }
+
+        // downsamples the region by nearest-neighbour sampling to fit within
+        // 'width' x 'height' pixels; regions are never upsampled
+        public Builder setSampleSize(final int width, final int height) {
+            sampleWidth = Math.max(1, width);
+            sampleHeight = Math.max(1, height);
+            return this;
+        }
+
+        public LoadOptions build() {
+            return new LoadOptions(frameFrom, frameTo, layers,
+                    regionX, regionY, regionWidth, regionHeight,
+                    sampleWidth, sampleHeight);
+        }
+    }
+}
@@ -1,75 +1,57 @@
 package com.jordanbunke.stip_parser;
 
+import com.jordanbunke.delta_time.error.GameError;
 import com.jordanbunke.delta_time.image.GameImage;
 import com.jordanbunke.delta_time.io.FileIO;
 import com.jordanbunke.delta_time.utility.math.Pair;
+import com.jordanbunke.stip_parser.cache.CelCache;
+import com.jordanbunke.stip_parser.cache.FileIdentity;
+import com.jordanbunke.stip_parser.logic.ColorCodec;
+import com.jordanbunke.stip_parser.logic.ErrorSink;
 import com.jordanbunke.stip_parser.logic.ParseHex;
 import com.jordanbunke.stip_parser.rep.IRLayer;
-import com.jordanbunke.stip_parser.rep.IROnionSkin;
 import com.jordanbunke.stip_parser.rep.IRPalette;
 import com.jordanbunke.stip_parser.rep.IRState;
 
 import java.awt.*;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.stream.IntStream;
+import java.util.function.Consumer;
 
-public final class ParserSerializer {
-    private static final char NL = '\n', INDENT = '\t',
-            ENCLOSER_OPEN = '{', ENCLOSER_CLOSE = '}';
+import static com.jordanbunke.stip_parser.StipFormat.*;
 
-    private static final String CONTENT_SEPARATOR = ",", TAG_SEPARATOR = ":",
-            TRANSPARENT = "t";
+public final class ParserSerializer {
+    private static final String TRANSPARENT = "t";
 
     private static final int NOT_FOUND = -1;
 
-    private static final double FS_INITIAL = 1.0,
-            FS_LINKED_OPTIMIZATION_THRESHOLD = 1.1,
-            FS_NEW_ONION_SKIN_THRESHOLD = 1.3;
-
-    // tags
-    private static final String
-
-            INVALID_TAG = "invalid",
-            FILE_STANDARD_TAG = "file_standard",
-            PALETTE_NAME_TAG = "palette_name",
-            LAYERS_TAG = "layers",
-            LAYER_TAG = "layer",
-            LAYER_NAME_TAG = "layer_name",
-            LAYER_LINKED_STATUS_TAG = "is_linked",
-            LAYER_ENABLED_STATUS_TAG = "is_enabled",
-            LAYER_ONION_SKIN_TAG = "onion_skin",
-            LAYER_OPACITY_TAG = "opacity",
-            FRAME_COUNT_TAG = "frame_count",
-            FRAME_DURATIONS_TAG = "frame_durations",
-            FRAMES_TAG = "frames",
-            LINKED_LAYER_TAG = "linked_layer",
-            FRAME_TAG = "frame",
-            COLOR_TAG = "cols",
-            DIMENSION_TAG = "dims",
-            SKIN_TYPE_BACK_TAG = "skin_type_back",
-            SKIN_TYPE_FORWARD_TAG = "skin_type_forward",
-            HUE_BACK_TAG = "hue_back",
-            HUE_FORWARD_TAG = "hue_forward",
-            FADE_FACTOR_BACK_TAG = "fade_factor_back",
-            FADE_FACTOR_FORWARD_TAG = "fade_factor_forward",
-            LOOK_BACK_TAG = "look_back",
-            LOOK_FORWARD_TAG = "look_forward",
-            UNDER_BACK_TAG = "under_back",
-            UNDER_FORWARD_TAG = "under_forward";
+    static {
+        // see ErrorSink; a sink that the caller has set is kept
+        ErrorSink.setDefault(GameError::send);
+    }
 
     public static IRPalette loadPalette(final String file) {
-        final String contents = file
-                .replaceAll("\n", "")
-                .replaceAll("\r", "")
-                .replaceAll("\t", "");
+        return loadPalette(file, ErrorSink::send);
+    }
+
+    // invalid color codes are passed to 'onInvalid' and load as transparent
+    public static IRPalette loadPalette(
+            final String file, final Consumer<String> onInvalid
+    ) {
+        final String contents = stripWhitespace(file);
 
-        return deserializePalette(contents);
+        return deserializePalette(contents, onInvalid);
     }
 
-    private static IRPalette deserializePalette(final String contents) {
+    private static IRPalette deserializePalette(
+            final String contents, final Consumer<String> onInvalid
+    ) {
         final SerialBlock[] paletteBlocks = deserializeBlocksAtDepthLevel(contents);
 
         Color[] colors = new Color[] {};
@@ -79,14 +61,19 @@ public final class ParserSerializer {
             switch (block.tag()) {
                 case PALETTE_NAME_TAG -> name = block.value();
                 case COLOR_TAG -> {
-                    final String[] colorCodes = block.value()
-                            .split(CONTENT_SEPARATOR);
-
-                    colors = block.value().contains(CONTENT_SEPARATOR)
-                            ? Arrays.stream(colorCodes)
-                            .map(ParserSerializer::deserializeColor)
-                            .toArray(Color[]::new)
-                            : new Color[] {};
+                    if (block.value().contains(CONTENT_SEPARATOR)) {
+                        // decoded in one pass, without a String per code
+                        final char[] codes = block.value().toCharArray();
+                        final int[] argb = new int[codes.length];
+                        final int count = ColorCodec.decodeRun(
+                                codes, 0, codes.length, argb, onInvalid);
+
+                        colors = new Color[count];
+
+                        for (int i = 0; i < count; i++)
+                            colors[i] = new Color(argb[i], true);
+                    } else
+                        colors = new Color[] {};
                 }
             }
         }
@@ -130,147 +117,45 @@ public final class ParserSerializer {
     }
 
     public static IRState load(final String file) {
-        final String contents = file
-                .replaceAll("\n", "")
-                .replaceAll("\r", "")
-                .replaceAll("\t", "");
-        return deserializeProjectState(contents);
+        return load(file, LoadOptions.all());
     }
 
-    private static IRState deserializeProjectState(final String contents) {
-        final SerialBlock[] stateBlocks = deserializeBlocksAtDepthLevel(contents);
-
-        int frameCount = 1, w = 1, h = 1;
-        IRLayer[] layers = new IRLayer[] {};
-        double[] frameDurations = new double[] { 1.0 };
-        double fileStandard = FS_INITIAL;
-
-        for (SerialBlock block : stateBlocks) {
-            switch (block.tag()) {
-                case DIMENSION_TAG -> {
-                    final String[] vals = block.value().split(CONTENT_SEPARATOR);
-
-                    if (vals.length == 2) {
-                        w = Integer.parseInt(vals[0]);
-                        h = Integer.parseInt(vals[1]);
-                    }
-                }
-                case FILE_STANDARD_TAG ->
-                        fileStandard = Double.parseDouble(block.value());
-                case FRAME_COUNT_TAG ->
-                        frameCount = Integer.parseInt(block.value());
-                case FRAME_DURATIONS_TAG -> {
-                    final String[] vals = block.value().split(CONTENT_SEPARATOR);
-
-                    frameDurations = Arrays.stream(vals)
-                            .mapToDouble(Double::parseDouble).toArray();
-                }
-                case LAYERS_TAG -> {
-                    final SerialBlock[] layerBlocks = deserializeBlocksAtDepthLevel(block.value());
-
-                    final double fs = fileStandard;
-                    final int fc = frameCount;
-
-                    layers = Arrays.stream(layerBlocks)
-                            .filter(lb -> lb.tag().equals(LAYER_TAG))
-                            .map(lb -> deserializeLayer(lb.value(), fs, fc))
-                            .toArray(IRLayer[]::new);
-                }
-            }
-        }
-
-        return new IRState(w, h, frameCount, frameDurations, layers);
+    public static IRState load(final Path filepath) {
+        return load(filepath, LoadOptions.all());
     }
 
-    private static IRLayer deserializeLayer(
-            final String contents, final double fileStandard,
-            final int frameCount
-    ) {
-        final SerialBlock[] blocks = deserializeBlocksAtDepthLevel(contents);
-
-        GameImage[] frames = new GameImage[] {};
-        GameImage linked = GameImage.dummy();
-        double opacity = 1.0;
-        boolean enabled = true, framesLinked = false;
-        IROnionSkin os = IROnionSkin.trivial();
-        String name = "";
-
-        for (SerialBlock block : blocks) {
-            switch (block.tag()) {
-                case LAYER_NAME_TAG -> name = block.value();
-                case LAYER_ENABLED_STATUS_TAG ->
-                        enabled = Boolean.parseBoolean(block.value());
-                case LAYER_LINKED_STATUS_TAG ->
-                        framesLinked = Boolean.parseBoolean(block.value());
-                case LAYER_ONION_SKIN_TAG ->
-                        os = deserializeOnionSkin(block.value(), fileStandard);
-                case LAYER_OPACITY_TAG ->
-                        opacity = Double.parseDouble(block.value());
-                case LINKED_LAYER_TAG ->
-                        linked = deserializeImage(block.value());
-                case FRAMES_TAG -> {
-                    final SerialBlock[] frameBlocks = deserializeBlocksAtDepthLevel(block.value());
-
-                    frames = Arrays.stream(frameBlocks)
-                            .filter(fb -> fb.tag().equals(FRAME_TAG))
-                            .map(fb -> deserializeImage(fb.value()))
-                            .toArray(GameImage[]::new);
-                }
-            }
-        }
+    public static IRState load(final Path filepath, final LoadOptions options) {
+        final StateAssembler assembler = new StateAssembler();
+        StipReader.read(filepath, assembler, options);
 
-        final boolean loadFromLinked = framesLinked &&
-                fileStandard >= FS_LINKED_OPTIMIZATION_THRESHOLD && frameCount > 0;
-
-        if (loadFromLinked) {
-            final GameImage l = linked;
-            frames = IntStream.range(0, frameCount).mapToObj(i -> l)
-                    .toArray(GameImage[]::new);
-        } else
-            linked = frames.length == 0 ? GameImage.dummy() : frames[0];
-
-        return new IRLayer(name, frames, linked, opacity, enabled,
-                framesLinked, false, os);
+        return assembler.build();
     }
 
-    private static IROnionSkin deserializeOnionSkin(
-            final String contents, final double fileStandard
-    ) {
-        if (fileStandard < FS_NEW_ONION_SKIN_THRESHOLD || contents.isEmpty())
-            return IROnionSkin.trivial();
+    public static IRState load(final String file, final LoadOptions options) {
+        final StateAssembler assembler = new StateAssembler();
+        StipReader.read(file, assembler, options);
 
-        final IROnionSkin.Builder osBuilder = new IROnionSkin.Builder();
-        final SerialBlock[] blocks = deserializeBlocksAtDepthLevel(contents);
+        return assembler.build();
+    }
 
-        for (SerialBlock block : blocks) {
-            switch (block.tag()) {
-                case SKIN_TYPE_BACK_TAG ->
-                        osBuilder.setSkinTypeBack(IROnionSkin.SkinType.valueOf(block.value()));
-                case SKIN_TYPE_FORWARD_TAG ->
-                        osBuilder.setSkinTypeForward(IROnionSkin.SkinType.valueOf(block.value()));
-                case HUE_BACK_TAG ->
-                        osBuilder.setHueBack(Double.parseDouble(block.value()));
-                case HUE_FORWARD_TAG ->
-                        osBuilder.setHueForward(Double.parseDouble(block.value()));
-                case FADE_FACTOR_BACK_TAG ->
-                        osBuilder.setFadeFactorBack(Double.parseDouble(block.value()));
-                case FADE_FACTOR_FORWARD_TAG ->
-                        osBuilder.setFadeFactorForward(Double.parseDouble(block.value()));
-                case LOOK_BACK_TAG ->
-                        osBuilder.setLookBack(Integer.parseInt(block.value()));
-                case LOOK_FORWARD_TAG ->
-                        osBuilder.setLookForward(Integer.parseInt(block.value()));
-                case UNDER_BACK_TAG ->
-                        osBuilder.setUnderBack(Boolean.parseBoolean(block.value()));
-                case UNDER_FORWARD_TAG ->
-                        osBuilder.setUnderForward(Boolean.parseBoolean(block.value()));
-            }
+    public static IRState loadLazily(final Path filepath, final CelCache cache) {
+        final FileIdentity identity = FileIdentity.of(filepath);
+        final StateAssembler assembler =
+                StateAssembler.lazy(filepath, identity, cache);
+
+        // ISO-8859-1 maps every byte to one char, so positions are offsets
+        try (Reader in = new InputStreamReader(Files.newInputStream(filepath),
+                StandardCharsets.ISO_8859_1)) {
+            StipReader.read(in, assembler);
+        } catch (IOException e) {
+            ErrorSink.send("Could not read \"" + filepath + "\".");
+            return new IRState(1, 1, 1, new double[] { 1.0 }, new IRLayer[] {});
         }
 
-        return osBuilder.build();
+        return assembler.build();
     }
 
-    private static GameImage deserializeImage(final String contents) {
+    static GameImage deserializeImage(final String contents) {
         final int DIM_INDEX = 0, COL_INDEX = 1;
 
         final SerialBlock[] blocks = deserializeBlocksAtDepthLevel(contents);
@@ -289,20 +174,13 @@ public final class ParserSerializer {
         final int w = Integer.parseInt(dims[0]), h = Integer.parseInt(dims[1]);
         final GameImage frame = new GameImage(w, h);
 
-        // colors
-        final String[] pixels = blocks[COL_INDEX].value().split(CONTENT_SEPARATOR);
+        // colors; as in StipReader, codes past the end of the cel are
+        // ignored and pixels without a code are left transparent
+        final char[] colors = blocks[COL_INDEX].value().toCharArray();
+        final int[] argb = new int[w * h];
 
-        if (pixels.length != w * h)
-            return frame;
-
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                final String pixel = pixels[(y * w) + x];
-                final Color c = deserializeColor(pixel);
-
-                frame.dot(c, x, y);
-            }
-        }
+        ColorCodec.decodeRun(colors, 0, colors.length, argb);
+        frame.setRGB(0, 0, w, h, argb, 0, w);
 
         return frame.submit();
     }
@@ -347,6 +225,13 @@ public final class ParserSerializer {
         return blocks.toArray(SerialBlock[]::new);
     }
 
+    static String stripWhitespace(final String contents) {
+        return contents
+                .replaceAll("\n", "")
+                .replaceAll("\r", "")
+                .replaceAll("\t", "");
+    }
+
     private static SerialBlock deserializeNextBlock(final String contents, final int openIndex) {
         final int pastClosedIndex = indexPastClosed(contents, openIndex);
         final String blockString = contents.substring(openIndex, pastClosedIndex);
@@ -394,6 +279,34 @@ public final class ParserSerializer {
         FileIO.writeFile(filepath, serialized);
     }
 
+    // streams a layer's cels into a writer that is not mid-layer
+    public static void writeLayer(final StipWriter writer, final IRLayer layer) {
+        writer.beginLayer(layer.name(), layer.enabled(), layer.opacity(),
+                layer.celsLinked(), layer.onionSkin());
+
+        int[] row = new int[writer.width()];
+
+        for (int i = 0; i < (layer.celsLinked() ? 1 : writer.frameCount()); i++) {
+            final GameImage cel = layer.celsLinked()
+                    ? layer.linkedContent() : layer.getCel(i);
+
+            // each cel is written at its own size, as save does
+            final int w = cel.getWidth(), h = cel.getHeight();
+
+            if (row.length < w)
+                row = new int[w];
+
+            writer.beginCel(w, h);
+
+            for (int y = 0; y < h; y++) {
+                cel.getRGB(0, y, w, 1, row, 0, w);
+                writer.writeRow(row);
+            }
+        }
+
+        writer.endLayer();
+    }
+
     private static String serializeProjectState(final IRState state) {
         final StringBuilder sb = new StringBuilder();
 
@@ -403,12 +316,8 @@ public final class ParserSerializer {
 
         final int w = state.width(), h = state.height(),
                 frameCount = state.frameCount();
-        final double[] frameDurations = state.frameDurations();
-        final String durationsText = frameDurations.length == 1
-                ? String.valueOf(frameDurations[0])
-                : Arrays.stream(frameDurations).mapToObj(String::valueOf)
-                .reduce((a, b) -> a + CONTENT_SEPARATOR + b)
-                .orElse("1.0");
+        final String durationsText =
+                serializeFrameDurations(state.frameDurations());
 
         // dims definition
         openWithTag(sb, DIMENSION_TAG).append(w).append(CONTENT_SEPARATOR)
@@ -483,41 +392,8 @@ public final class ParserSerializer {
         return sb.toString();
     }
 
-    private static String serializeOnionSkin(final IROnionSkin onionSkin) {
-        final StringBuilder sb = new StringBuilder();
-        final int indentLevel = 2;
-
-        // onion skin tag opener
-        indent(sb, indentLevel);
-        openWithTag(sb, LAYER_ONION_SKIN_TAG);
-
-        // leave attribute blank if trivial
-        if (!onionSkin.equals(IROnionSkin.trivial())) {
-            sb.append(NL);
-
-            serializeSimpleAttributes(sb, indentLevel, buildAttributes(
-                    new Pair<>(SKIN_TYPE_BACK_TAG, onionSkin.skinTypeBack()),
-                    new Pair<>(SKIN_TYPE_FORWARD_TAG, onionSkin.skinTypeForward()),
-                    new Pair<>(HUE_BACK_TAG, onionSkin.hueBack()),
-                    new Pair<>(HUE_FORWARD_TAG, onionSkin.hueForward()),
-                    new Pair<>(FADE_FACTOR_BACK_TAG, onionSkin.fadeFactorBack()),
-                    new Pair<>(FADE_FACTOR_FORWARD_TAG, onionSkin.fadeFactorForward()),
-                    new Pair<>(LOOK_BACK_TAG, onionSkin.lookBack()),
-                    new Pair<>(LOOK_FORWARD_TAG, onionSkin.lookForward()),
-                    new Pair<>(UNDER_BACK_TAG, onionSkin.underBack()),
-                    new Pair<>(UNDER_FORWARD_TAG, onionSkin.underForward())));
-
-            indent(sb, indentLevel);
-        }
-
-        // onion skin tag closer
-        sb.append(ENCLOSER_CLOSE).append(NL);
-
-        return sb.toString();
-    }
-
     @SafeVarargs
-    private static Pair<String, Object>[] buildAttributes(
+    static Pair<String, Object>[] buildAttributes(
             final Pair<String, Object>... attributes
     ) {
         return attributes;
@@ -528,11 +404,8 @@ public final class ParserSerializer {
             final StringBuilder sb, final int indentLevel,
             final Pair<String, Object>... tagValuePairs
     ) {
-        for (Pair<String, Object> tvPair : tagValuePairs) {
-            indent(sb, indentLevel + 1);
-            openWithTag(sb, tvPair.a()).append(tvPair.b())
-                    .append(ENCLOSER_CLOSE).append(NL);
-        }
+        for (Pair<String, Object> tvPair : tagValuePairs)
+            serializeAttribute(sb, indentLevel, tvPair.a(), tvPair.b());
     }
 
     private static String serializeImage(
@@ -557,15 +430,16 @@ public final class ParserSerializer {
         indent(sb, indentLevel + 1);
         openWithTag(sb, COLOR_TAG).append(NL);
 
+        final int[] row = new int[w];
+
         for (int y = 0; y < h; y++) {
             indent(sb, indentLevel + 2);
 
-            for (int x = 0; x < w; x++) {
-                sb.append(serializeColor(image.getColorAt(x, y), false));
+            image.getRGB(0, y, w, 1, row, 0, w);
+            ColorCodec.encodeRun(row, 0, w, false, sb);
 
-                if (x + 1 < w || y + 1 < h)
-                    sb.append(CONTENT_SEPARATOR);
-            }
+            if (y + 1 < h)
+                sb.append(CONTENT_SEPARATOR);
 
             sb.append(NL);
         }
@@ -585,32 +459,6 @@ public final class ParserSerializer {
     public static String serializeColor(
             final Color c, final boolean preserveRGBForTransparent
     ) {
-        if (c.getAlpha() == 0 && !preserveRGBForTransparent)
-            return TRANSPARENT;
-
-        final boolean opaque = c.getAlpha() == 0xff;
-
-        final String r = Integer.toHexString(c.getRed()),
-                g = Integer.toHexString(c.getGreen()),
-                b = Integer.toHexString(c.getBlue()),
-                a = Integer.toHexString(c.getAlpha());
-
-        return (r.length() == 1 ? ("0") + r : r) +
-                (g.length() == 1 ? ("0") + g : g) +
-                (b.length() == 1 ? ("0") + b : b) +
-                (opaque ? "" : (a.length() == 1 ? ("0") + a : a));
-    }
-
-    private static StringBuilder openWithTag(
-            final StringBuilder sb, final String tag
-    ) {
-        sb.append(ENCLOSER_OPEN).append(tag).append(TAG_SEPARATOR);
-        return sb;
-    }
-
-    private static void indent(
-            final StringBuilder sb, final int indentLevel
-    ) {
-        sb.append(String.valueOf(INDENT).repeat(indentLevel));
+        return ColorCodec.encode(c.getRGB(), preserveRGBForTransparent);
     }
 }
@@ -0,0 +1,169 @@
+package com.jordanbunke.stip_parser;
+
+import com.jordanbunke.stip_parser.logic.ColorCodec;
+import com.jordanbunke.stip_parser.logic.ErrorSink;
+import com.jordanbunke.stip_parser.rep.IROnionSkin;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// Rewrites .stip files of any file standard at Standards.NATIVE without
+// building an IRState, streaming the file once. Layers that are linked are
+// written with one linked cel, even in files from before linked layers,
+// which stored every frame; layers that are not linked keep all of their
+// frames. Color codes are copied as they are, and only cels with codes that
+// are not written canonically are decoded.
+public final class StandardUpgrader {
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    public static void upgrade(final Path source, final Path target) {
+        upgrade(visitor -> StipReader.read(source, visitor), target);
+    }
+
+    public static void upgrade(final String contents, final Path target) {
+        upgrade(visitor -> StipReader.read(contents, visitor), target);
+    }
+
+    public static void upgrade(final String contents, final Writer out) {
+        upgrade(visitor -> StipReader.read(contents, visitor),
+                builder -> builder.open(out));
+    }
+
+    // the upgrade is written to a unique file beside the target, which only
+    // replaces the target once the source has been read and written in
+    // full; the source may therefore be the target
+    private static void upgrade(
+            final Predicate<StipVisitor> read, final Path target
+    ) {
+        final Path temp;
+
+        try {
+            temp = Files.createTempFile(target.toAbsolutePath().getParent(),
+                    target.getFileName().toString(), TEMP_SUFFIX);
+        } catch (IOException e) {
+            ErrorSink.send("Could not write \"" + target + "\".");
+            return;
+        }
+
+        final boolean upgraded = upgrade(read, builder -> builder.open(temp));
+
+        try {
+            if (upgraded)
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            else
+                Files.deleteIfExists(temp);
+        } catch (IOException e) {
+            ErrorSink.send("Could not replace \"" + target + "\".");
+            temp.toFile().delete();
+        }
+    }
+
+    private static boolean upgrade(
+            final Predicate<StipVisitor> read,
+            final Function<StipWriter.Builder, StipWriter> open
+    ) {
+        final Rewriter rewriter = new Rewriter(open);
+        final boolean complete = read.test(rewriter);
+
+        if (rewriter.writer == null)
+            return false;
+
+        rewriter.writer.close();
+        return complete && !rewriter.writer.failed();
+    }
+
+    private static final class Rewriter implements StipVisitor {
+        private final Function<StipWriter.Builder, StipWriter> open;
+
+        private StipWriter writer;
+        private int width, height, frameCount;
+
+        private String name;
+        private boolean enabled, layerBegun, linked;
+        private double opacity;
+        private IROnionSkin onionSkin;
+        private int celsWritten;
+
+        Rewriter(final Function<StipWriter.Builder, StipWriter> open) {
+            this.open = open;
+        }
+
+        @Override
+        public boolean decodesCels() {
+            return false;
+        }
+
+        @Override
+        public void onState(final int width, final int height, final int frameCount) {
+            this.width = width;
+            this.height = height;
+            this.frameCount = frameCount;
+        }
+
+        @Override
+        public void onFrameDurations(final double[] frameDurations) {
+            writer = open.apply(StipWriter.of(width, height, frameCount)
+                    .setFrameDurations(frameDurations));
+        }
+
+        @Override
+        public void onLayerStart(
+                final int layer, final String name, final boolean enabled,
+                final boolean celsLinked, final double opacity
+        ) {
+            this.name = name;
+            this.enabled = enabled;
+            this.opacity = opacity;
+            this.linked = celsLinked;
+
+            // older standards had no onion skin block; they get the default
+            onionSkin = IROnionSkin.trivial();
+            layerBegun = false;
+            celsWritten = 0;
+        }
+
+        @Override
+        public void onOnionSkin(final int layer, final IROnionSkin onionSkin) {
+            this.onionSkin = onionSkin;
+        }
+
+        @Override
+        public void onCelCodes(
+                final int layer, final int frame, final int width, final int height,
+                final CharSequence codes
+        ) {
+            if (!layerBegun)
+                beginLayer(linked || frame == LINKED);
+
+            // files from before linked layers stored every frame of a linked
+            // layer; the first stands for all of them, as it does on loading
+            if (celsWritten >= (linked ? 1 : frameCount))
+                return;
+
+            writer.writeCelCodes(width, height, ColorCodec.canonicalRun(
+                    codes, width * height, this::onError));
+            celsWritten++;
+        }
+
+        @Override
+        public void onLayerEnd(final int layer) {
+            if (!layerBegun)
+                beginLayer(linked);
+
+            writer.endLayer();
+        }
+
+        private void beginLayer(final boolean linked) {
+            this.linked = linked;
+            layerBegun = true;
+
+            writer.beginLayer(name, enabled, opacity, linked, onionSkin);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.jordanbunke.stip_parser;
+
+import com.jordanbunke.delta_time.image.GameImage;
+import com.jordanbunke.stip_parser.cache.CelCache;
+import com.jordanbunke.stip_parser.cache.FileIdentity;
+import com.jordanbunke.stip_parser.rep.IRLayer;
+import com.jordanbunke.stip_parser.rep.IROnionSkin;
+import com.jordanbunke.stip_parser.rep.IRState;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+class StateAssembler implements StipVisitor {
+    private final List<IRLayer> layers;
+    private final List<GameImage> frames;
+
+    // set when frames are located rather than decoded; see lazy()
+    private final Path filepath;
+    private final FileIdentity identity;
+    private final CelCache cache;
+    private final List<Long> offsets;
+    private final List<Integer> lengths;
+
+    private double fileStandard;
+    private int width, height, frameCount;
+    private double[] frameDurations;
+
+    private String name;
+    private boolean enabled, celsLinked;
+    private double opacity;
+    private IROnionSkin onionSkin;
+    private GameImage linked, cel;
+
+    StateAssembler() {
+        this(null, null, null);
+    }
+
+    private StateAssembler(
+            final Path filepath, final FileIdentity identity,
+            final CelCache cache
+    ) {
+        this.filepath = filepath;
+        this.identity = identity;
+        this.cache = cache;
+
+        layers = new ArrayList<>();
+        frames = new ArrayList<>();
+        offsets = new ArrayList<>();
+        lengths = new ArrayList<>();
+
+        fileStandard = StipFormat.FS_INITIAL;
+        width = 1;
+        height = 1;
+        frameCount = 1;
+        frameDurations = new double[] { 1.0 };
+    }
+
+    // frames are decoded from the file when they are first asked for; the
+    // file must be read as ISO-8859-1 so that positions are byte offsets
+    static StateAssembler lazy(
+            final Path filepath, final FileIdentity identity,
+            final CelCache cache
+    ) {
+        return new Lazy(filepath, identity, cache);
+    }
+
+    private static final class Lazy extends StateAssembler
+            implements FrameLocator {
+        Lazy(
+                final Path filepath, final FileIdentity identity,
+                final CelCache cache
+        ) {
+            super(filepath, identity, cache);
+        }
+
+        @Override
+        public void onFrameLocated(
+                final int layer, final int frame,
+                final long offset, final int length
+        ) {
+            locate(offset, length);
+        }
+    }
+
+    @Override
+    public void onFileStandard(final double fileStandard) {
+        this.fileStandard = fileStandard;
+    }
+
+    @Override
+    public void onState(final int width, final int height, final int frameCount) {
+        this.width = width;
+        this.height = height;
+        this.frameCount = frameCount;
+    }
+
+    @Override
+    public void onFrameDurations(final double[] frameDurations) {
+        this.frameDurations = frameDurations;
+    }
+
+    @Override
+    public void onLayerStart(
+            final int layer, final String name, final boolean enabled,
+            final boolean celsLinked, final double opacity
+    ) {
+        // names read as ISO-8859-1 are restored to their UTF-8 characters
+        this.name = cache == null ? name : new String(
+                name.getBytes(StandardCharsets.ISO_8859_1),
+                StandardCharsets.UTF_8);
+        this.enabled = enabled;
+        this.celsLinked = celsLinked;
+        this.opacity = opacity;
+
+        onionSkin = IROnionSkin.trivial();
+        linked = null;
+        frames.clear();
+        offsets.clear();
+        lengths.clear();
+    }
+
+    @Override
+    public void onOnionSkin(final int layer, final IROnionSkin onionSkin) {
+        this.onionSkin = onionSkin;
+    }
+
+    @Override
+    public void onCelStart(
+            final int layer, final int frame, final int width, final int height
+    ) {
+        cel = new GameImage(width, height);
+    }
+
+    @Override
+    public void onCelRow(
+            final int layer, final int frame, final int y, final int[] argbRow
+    ) {
+        cel.setRGB(0, y, cel.getWidth(), 1, argbRow, 0, cel.getWidth());
+    }
+
+    @Override
+    public void onCelEnd(final int layer, final int frame) {
+        if (frame == LINKED)
+            linked = cel.submit();
+        else
+            frames.add(cel.submit());
+
+        cel = null;
+    }
+
+    void locate(final long offset, final int length) {
+        offsets.add(offset);
+        lengths.add(length);
+    }
+
+    @Override
+    public void onLayerEnd(final int layer) {
+        final GameImage[] cels;
+        final GameImage linkedContent;
+        LazyCels lazyCels = null;
+
+        // mirrors the linked layer handling of ParserSerializer.load
+        if (celsLinked && frameCount > 0 && fileStandard >=
+                StipFormat.FS_LINKED_OPTIMIZATION_THRESHOLD) {
+            linkedContent = linked == null ? GameImage.dummy() : linked;
+            cels = new GameImage[frameCount];
+
+            for (int i = 0; i < frameCount; i++)
+                cels[i] = linkedContent;
+        } else if (cache != null) {
+            // located frames are left null until IRLayer resolves them
+            lazyCels = new LazyCels(filepath, identity, layer, cache,
+                    offsets.stream().mapToLong(Long::longValue).toArray(),
+                    lengths.stream().mapToInt(Integer::intValue).toArray());
+            cels = new GameImage[offsets.size()];
+            linkedContent = cels.length == 0 ? GameImage.dummy() : null;
+        } else {
+            cels = frames.toArray(GameImage[]::new);
+            linkedContent = cels.length == 0 ? GameImage.dummy() : cels[0];
+        }
+
+        layers.add(new IRLayer(name, cels, linkedContent, opacity,
+                enabled, celsLinked, false, onionSkin, lazyCels));
+    }
+
+    IRState build() {
+        return new IRState(width, height, frameCount, frameDurations,
+                layers.toArray(IRLayer[]::new));
+    }
+}
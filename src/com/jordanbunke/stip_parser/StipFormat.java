@@ -0,0 +1,140 @@
+package com.jordanbunke.stip_parser;
+
+import com.jordanbunke.stip_parser.rep.IROnionSkin;
+
+import java.util.Arrays;
+
+// The tags, file standard thresholds and text layout of the .stip format.
+// Nothing here depends on AWT or delta-time, so the streaming classes built
+// on it can run headless.
+final class StipFormat {
+    static final char NL = '\n', INDENT = '\t',
+            ENCLOSER_OPEN = '{', ENCLOSER_CLOSE = '}';
+
+    static final String CONTENT_SEPARATOR = ",", TAG_SEPARATOR = ":";
+
+    // the separators as characters, for readers that scan char by char
+    static final char CONTENT_SEPARATOR_CHAR = ',', TAG_SEPARATOR_CHAR = ':';
+
+    static final double FS_INITIAL = 1.0,
+            FS_LINKED_OPTIMIZATION_THRESHOLD = 1.1,
+            FS_NEW_ONION_SKIN_THRESHOLD = 1.3;
+
+    // tags
+    static final String
+
+            INVALID_TAG = "invalid",
+            FILE_STANDARD_TAG = "file_standard",
+            PALETTE_NAME_TAG = "palette_name",
+            LAYERS_TAG = "layers",
+            LAYER_TAG = "layer",
+            LAYER_NAME_TAG = "layer_name",
+            LAYER_LINKED_STATUS_TAG = "is_linked",
+            LAYER_ENABLED_STATUS_TAG = "is_enabled",
+            LAYER_ONION_SKIN_TAG = "onion_skin",
+            LAYER_OPACITY_TAG = "opacity",
+            FRAME_COUNT_TAG = "frame_count",
+            FRAME_DURATIONS_TAG = "frame_durations",
+            FRAMES_TAG = "frames",
+            LINKED_LAYER_TAG = "linked_layer",
+            FRAME_TAG = "frame",
+            COLOR_TAG = "cols",
+            DIMENSION_TAG = "dims",
+            SKIN_TYPE_BACK_TAG = "skin_type_back",
+            SKIN_TYPE_FORWARD_TAG = "skin_type_forward",
+            HUE_BACK_TAG = "hue_back",
+            HUE_FORWARD_TAG = "hue_forward",
+            FADE_FACTOR_BACK_TAG = "fade_factor_back",
+            FADE_FACTOR_FORWARD_TAG = "fade_factor_forward",
+            LOOK_BACK_TAG = "look_back",
+            LOOK_FORWARD_TAG = "look_forward",
+            UNDER_BACK_TAG = "under_back",
+            UNDER_FORWARD_TAG = "under_forward";
+
+    static final double DEF_FRAME_DURATION = 1.0;
+
+    // the durations of frames 'from' to 'to', even if the file lists too few
+    // or too many; frames without one take the default duration
+    static double[] fitFrameDurations(
+            final double[] frameDurations, final int from, final int to
+    ) {
+        final double[] fitted = new double[Math.max(0, to - from)];
+
+        for (int i = 0; i < fitted.length; i++)
+            fitted[i] = from + i < frameDurations.length
+                    ? frameDurations[from + i] : DEF_FRAME_DURATION;
+
+        return fitted;
+    }
+
+    static String serializeFrameDurations(final double[] frameDurations) {
+        return frameDurations.length == 1
+                ? String.valueOf(frameDurations[0])
+                : Arrays.stream(frameDurations).mapToObj(String::valueOf)
+                .reduce((a, b) -> a + CONTENT_SEPARATOR + b)
+                .orElse("1.0");
+    }
+
+    static String serializeOnionSkin(final IROnionSkin onionSkin) {
+        final StringBuilder sb = new StringBuilder();
+        final int indentLevel = 2;
+
+        // onion skin tag opener
+        indent(sb, indentLevel);
+        openWithTag(sb, LAYER_ONION_SKIN_TAG);
+
+        // leave attribute blank if trivial
+        if (!onionSkin.equals(IROnionSkin.trivial())) {
+            sb.append(NL);
+
+            serializeAttribute(sb, indentLevel,
+                    SKIN_TYPE_BACK_TAG, onionSkin.skinTypeBack());
+            serializeAttribute(sb, indentLevel,
+                    SKIN_TYPE_FORWARD_TAG, onionSkin.skinTypeForward());
+            serializeAttribute(sb, indentLevel,
+                    HUE_BACK_TAG, onionSkin.hueBack());
+            serializeAttribute(sb, indentLevel,
+                    HUE_FORWARD_TAG, onionSkin.hueForward());
+            serializeAttribute(sb, indentLevel,
+                    FADE_FACTOR_BACK_TAG, onionSkin.fadeFactorBack());
+            serializeAttribute(sb, indentLevel,
+                    FADE_FACTOR_FORWARD_TAG, onionSkin.fadeFactorForward());
+            serializeAttribute(sb, indentLevel,
+                    LOOK_BACK_TAG, onionSkin.lookBack());
+            serializeAttribute(sb, indentLevel,
+                    LOOK_FORWARD_TAG, onionSkin.lookForward());
+            serializeAttribute(sb, indentLevel,
+                    UNDER_BACK_TAG, onionSkin.underBack());
+            serializeAttribute(sb, indentLevel,
+                    UNDER_FORWARD_TAG, onionSkin.underForward());
+
+            indent(sb, indentLevel);
+        }
+
+        // onion skin tag closer
+        sb.append(ENCLOSER_CLOSE).append(NL);
+
+        return sb.toString();
+    }
+
+    static void serializeAttribute(
+            final StringBuilder sb, final int indentLevel,
+            final String tag, final Object value
+    ) {
+        indent(sb, indentLevel + 1);
+        openWithTag(sb, tag).append(value).append(ENCLOSER_CLOSE).append(NL);
+    }
+
+    static StringBuilder openWithTag(
+            final StringBuilder sb, final String tag
+    ) {
+        sb.append(ENCLOSER_OPEN).append(tag).append(TAG_SEPARATOR);
+        return sb;
+    }
+
+    static void indent(
+            final StringBuilder sb, final int indentLevel
+    ) {
+        sb.append(String.valueOf(INDENT).repeat(indentLevel));
+    }
+}
@@ -0,0 +1,632 @@
+package com.jordanbunke.stip_parser;
+
+import com.jordanbunke.stip_parser.logic.ColorCodec;
+import com.jordanbunke.stip_parser.logic.ErrorSink;
+import com.jordanbunke.stip_parser.rep.IROnionSkin;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static com.jordanbunke.stip_parser.StipFormat.*;
+
+public final class StipReader {
+    private static final int BUFFER_SIZE = 1 << 16, EOF = -1,
+            MAX_CODE_LENGTH = 8, SKIPPED = -1;
+    private static final char CR = '\r';
+
+    private final Reader in;
+    private final StipVisitor visitor;
+    private final LoadOptions options;
+    private final char[] buffer, code;
+    private final StringBuilder codes;
+
+    private boolean failed;
+    private int position, limit;
+
+    // chars read before those in the buffer
+    private long consumed;
+    private int[] row, columns, rows, canvasColumns, canvasRows;
+
+    // state-level attributes
+    private double fileStandard;
+    private int width, height, frameCount;
+    private double[] frameDurations;
+    private boolean stateAnnounced;
+
+    // the selection of the project that is reported to the visitor
+    private int frameFrom, frameTo, cropX, cropY, cropWidth, cropHeight,
+            sampledWidth, sampledHeight;
+
+    // layer-level attributes
+    private String layerName;
+    private boolean layerEnabled, layerLinked, layerAnnounced;
+    private double layerOpacity;
+    private IROnionSkin layerOnionSkin;
+
+    private StipReader(
+            final Reader in, final StipVisitor visitor,
+            final LoadOptions options
+    ) {
+        this.in = in;
+        this.visitor = visitor;
+        this.options = options;
+
+        buffer = new char[BUFFER_SIZE];
+        code = new char[MAX_CODE_LENGTH + 1];
+        codes = new StringBuilder();
+        row = new int[0];
+        columns = new int[0];
+        rows = new int[0];
+        canvasColumns = new int[0];
+        canvasRows = new int[0];
+
+        failed = false;
+        position = 0;
+        limit = 0;
+        consumed = 0L;
+
+        fileStandard = FS_INITIAL;
+        width = 1;
+        height = 1;
+        frameCount = 1;
+        frameDurations = new double[] { 1.0 };
+        stateAnnounced = false;
+    }
+
+    public static boolean read(final Path filepath, final StipVisitor visitor) {
+        return read(filepath, visitor, LoadOptions.all());
+    }
+
+    public static boolean read(final String contents, final StipVisitor visitor) {
+        return read(contents, visitor, LoadOptions.all());
+    }
+
+    public static boolean read(final Reader in, final StipVisitor visitor) {
+        return read(in, visitor, LoadOptions.all());
+    }
+
+    public static boolean read(
+            final Path filepath, final StipVisitor visitor,
+            final LoadOptions options
+    ) {
+        try (Reader in = new InputStreamReader(
+                Files.newInputStream(filepath), StandardCharsets.UTF_8)) {
+            return read(in, visitor, options);
+        } catch (IOException e) {
+            ErrorSink.send("Could not read \"" + filepath + "\".");
+            return false;
+        }
+    }
+
+    public static boolean read(
+            final String contents, final StipVisitor visitor,
+            final LoadOptions options
+    ) {
+        return read(new StringReader(contents), visitor, options);
+    }
+
+    // frames, layers and rows outside of the options' selection are skipped
+    // without being decoded, and the selection is reported as if it were
+    // the whole project; returns false if the input could not be read to
+    // its end, in which case the visitor has only seen part of it
+    public static boolean read(
+            final Reader in, final StipVisitor visitor,
+            final LoadOptions options
+    ) {
+        final StipReader reader = new StipReader(in, visitor, options);
+        reader.readState();
+
+        return !reader.failed;
+    }
+
+    private void readState() {
+        int c;
+
+        while ((c = next()) != EOF) {
+            if (c != ENCLOSER_OPEN)
+                continue;
+
+            final String tag = readTag();
+
+            if (tag == null)
+                continue;
+
+            switch (tag) {
+                case FILE_STANDARD_TAG -> {
+                    fileStandard = Double.parseDouble(readValue());
+                    visitor.onFileStandard(fileStandard);
+                }
+                case DIMENSION_TAG -> {
+                    final String[] vals = readValue().split(CONTENT_SEPARATOR);
+
+                    if (vals.length == 2) {
+                        width = Integer.parseInt(vals[0]);
+                        height = Integer.parseInt(vals[1]);
+                    }
+                }
+                case FRAME_COUNT_TAG ->
+                        frameCount = Integer.parseInt(readValue());
+                case FRAME_DURATIONS_TAG -> frameDurations = Arrays
+                        .stream(readValue().split(CONTENT_SEPARATOR))
+                        .mapToDouble(Double::parseDouble).toArray();
+                case LAYERS_TAG -> {
+                    announceState();
+                    readLayers();
+                }
+                default -> skipValue();
+            }
+        }
+
+        announceState();
+        visitor.onEnd();
+    }
+
+    private void announceState() {
+        if (stateAnnounced)
+            return;
+
+        stateAnnounced = true;
+
+        frameFrom = Math.min(options.frameFrom(), frameCount);
+        frameTo = Math.max(frameFrom, Math.min(options.frameTo(), frameCount));
+
+        cropX = Math.min(options.regionX(), width - 1);
+        cropY = Math.min(options.regionY(), height - 1);
+        cropWidth = Math.min(options.regionWidth(), width - cropX);
+        cropHeight = Math.min(options.regionHeight(), height - cropY);
+
+        sampledWidth = options.sampledWidth(cropWidth, cropHeight);
+        sampledHeight = options.sampledHeight(cropWidth, cropHeight);
+
+        canvasColumns = indexMap(width, cropX, cropWidth, sampledWidth);
+        canvasRows = indexMap(height, cropY, cropHeight, sampledHeight);
+
+        visitor.onState(sampledWidth, sampledHeight, frameTo - frameFrom);
+        visitor.onFrameDurations(
+                fitFrameDurations(frameDurations, frameFrom, frameTo));
+    }
+
+    private void readLayers() {
+        int index = 0, layer = 0, c;
+
+        while ((c = next()) != EOF && c != ENCLOSER_CLOSE) {
+            if (c != ENCLOSER_OPEN)
+                continue;
+
+            final String tag = readTag();
+
+            if (tag == null)
+                continue;
+
+            if (tag.equals(LAYER_TAG) && options.includesLayer(index++))
+                readLayer(layer++);
+            else
+                skipValue();
+        }
+    }
+
+    private void readLayer(final int layer) {
+        layerName = "";
+        layerEnabled = true;
+        layerLinked = false;
+        layerOpacity = 1.0;
+        layerOnionSkin = IROnionSkin.trivial();
+        layerAnnounced = false;
+
+        int frame = 0, c;
+
+        while ((c = next()) != EOF && c != ENCLOSER_CLOSE) {
+            if (c != ENCLOSER_OPEN)
+                continue;
+
+            final String tag = readTag();
+
+            if (tag == null)
+                continue;
+
+            switch (tag) {
+                case LAYER_NAME_TAG -> layerName = readValue();
+                case LAYER_ENABLED_STATUS_TAG ->
+                        layerEnabled = Boolean.parseBoolean(readValue());
+                case LAYER_LINKED_STATUS_TAG ->
+                        layerLinked = Boolean.parseBoolean(readValue());
+                case LAYER_OPACITY_TAG ->
+                        layerOpacity = Double.parseDouble(readValue());
+                case LAYER_ONION_SKIN_TAG -> {
+                    if (fileStandard < FS_NEW_ONION_SKIN_THRESHOLD)
+                        skipValue();
+                    else
+                        layerOnionSkin = readOnionSkin();
+                }
+                case LINKED_LAYER_TAG -> {
+                    announceLayer(layer);
+                    readImage(layer, StipVisitor.LINKED);
+                }
+                case FRAMES_TAG -> {
+                    announceLayer(layer);
+                    frame = readFrames(layer, frame);
+                }
+                default -> skipValue();
+            }
+        }
+
+        announceLayer(layer);
+        visitor.onLayerEnd(layer);
+    }
+
+    private void announceLayer(final int layer) {
+        if (layerAnnounced)
+            return;
+
+        layerAnnounced = true;
+        visitor.onLayerStart(layer, layerName, layerEnabled,
+                layerLinked, layerOpacity);
+        visitor.onOnionSkin(layer, layerOnionSkin);
+    }
+
+    private IROnionSkin readOnionSkin() {
+        final IROnionSkin.Builder osBuilder = new IROnionSkin.Builder();
+        int c;
+
+        while ((c = next()) != EOF && c != ENCLOSER_CLOSE) {
+            if (c != ENCLOSER_OPEN)
+                continue;
+
+            final String tag = readTag();
+
+            if (tag == null)
+                continue;
+
+            switch (tag) {
+                case SKIN_TYPE_BACK_TAG -> osBuilder.setSkinTypeBack(
+                        IROnionSkin.SkinType.valueOf(readValue()));
+                case SKIN_TYPE_FORWARD_TAG -> osBuilder.setSkinTypeForward(
+                        IROnionSkin.SkinType.valueOf(readValue()));
+                case HUE_BACK_TAG ->
+                        osBuilder.setHueBack(Double.parseDouble(readValue()));
+                case HUE_FORWARD_TAG ->
+                        osBuilder.setHueForward(Double.parseDouble(readValue()));
+                case FADE_FACTOR_BACK_TAG ->
+                        osBuilder.setFadeFactorBack(Double.parseDouble(readValue()));
+                case FADE_FACTOR_FORWARD_TAG ->
+                        osBuilder.setFadeFactorForward(Double.parseDouble(readValue()));
+                case LOOK_BACK_TAG ->
+                        osBuilder.setLookBack(Integer.parseInt(readValue()));
+                case LOOK_FORWARD_TAG ->
+                        osBuilder.setLookForward(Integer.parseInt(readValue()));
+                case UNDER_BACK_TAG ->
+                        osBuilder.setUnderBack(Boolean.parseBoolean(readValue()));
+                case UNDER_FORWARD_TAG ->
+                        osBuilder.setUnderForward(Boolean.parseBoolean(readValue()));
+                default -> skipValue();
+            }
+        }
+
+        return osBuilder.build();
+    }
+
+    private int readFrames(final int layer, final int firstFrame) {
+        int frame = firstFrame, c;
+
+        while ((c = next()) != EOF && c != ENCLOSER_CLOSE) {
+            if (c != ENCLOSER_OPEN)
+                continue;
+
+            final String tag = readTag();
+
+            if (tag == null)
+                continue;
+
+            if (!tag.equals(FRAME_TAG))
+                skipValue();
+            else if (frame >= frameFrom && frame < frameTo &&
+                    visitor instanceof FrameLocator locator) {
+                final long offset = consumed + position;
+                skipValue();
+
+                locator.onFrameLocated(layer, frame++ - frameFrom, offset,
+                        (int) (consumed + position - 1 - offset));
+            } else if (frame >= frameFrom && frame < frameTo)
+                readImage(layer, frame++ - frameFrom);
+            else {
+                skipValue();
+                frame++;
+            }
+        }
+
+        return frame;
+    }
+
+    private void readImage(final int layer, final int frame) {
+        int w = 1, h = 1, c;
+        boolean started = false;
+
+        while ((c = next()) != EOF && c != ENCLOSER_CLOSE) {
+            if (c != ENCLOSER_OPEN)
+                continue;
+
+            final String tag = readTag();
+
+            if (tag == null)
+                continue;
+
+            switch (tag) {
+                case DIMENSION_TAG -> {
+                    final String[] dims = readValue().split(CONTENT_SEPARATOR);
+
+                    if (dims.length == 2) {
+                        w = Integer.parseInt(dims[0]);
+                        h = Integer.parseInt(dims[1]);
+                    }
+                }
+                case COLOR_TAG -> {
+                    if (started)
+                        skipValue();
+                    else {
+                        started = true;
+
+                        if (visitor.decodesCels())
+                            readColors(layer, frame, w, h);
+                        else
+                            readCodes(layer, frame, w, h);
+                    }
+                }
+                default -> skipValue();
+            }
+        }
+
+        if (!started && visitor.decodesCels())
+            visitor.onCelStart(layer, frame, reportedWidth(columnMap(w)),
+                    reportedHeight(rowMap(h)));
+        else if (!started) {
+            codes.setLength(0);
+            visitor.onCelStart(layer, frame, w, h);
+            visitor.onCelCodes(layer, frame, w, h, codes);
+        }
+
+        visitor.onCelEnd(layer, frame);
+    }
+
+    private void readColors(
+            final int layer, final int frame, final int w, final int h
+    ) {
+        final int[] columns = columnMap(w), rows = rowMap(h);
+        final int rowWidth = reportedWidth(columns);
+        int remaining = reportedHeight(rows);
+
+        visitor.onCelStart(layer, frame, rowWidth, remaining);
+
+        // a cel that lies wholly outside of the region is reported blank
+        if (covered(columns) == 0 || covered(rows) == 0) {
+            skipValue();
+            return;
+        }
+
+        // the row is exactly as wide as the reported cel, so no pixels of
+        // an earlier, wider cel are left past its end
+        if (row.length != rowWidth)
+            row = new int[rowWidth];
+
+        int x = 0, y = 0, length = 0, c;
+
+        while ((c = next()) != EOF) {
+            if (c == CONTENT_SEPARATOR_CHAR || c == ENCLOSER_CLOSE) {
+                if (length > 0) {
+                    // codes that are cropped or sampled out are not decoded
+                    if (rows[y] != SKIPPED && columns[x] != SKIPPED)
+                        row[columns[x]] = decode(length);
+
+                    if (++x == w) {
+                        if (rows[y] != SKIPPED) {
+                            visitor.onCelRow(layer, frame, rows[y], row);
+                            remaining--;
+                        }
+
+                        x = 0;
+                        y++;
+
+                        if (remaining == 0) {
+                            if (c != ENCLOSER_CLOSE)
+                                skipValue();
+
+                            return;
+                        }
+                    }
+                }
+
+                length = 0;
+
+                if (c == ENCLOSER_CLOSE)
+                    break;
+            } else if (length < code.length)
+                code[length++] = (char) c;
+        }
+
+        // a truncated final row is padded with transparent pixels
+        if (x > 0 && rows[y] != SKIPPED) {
+            for (int i = x; i < w; i++)
+                if (columns[i] != SKIPPED)
+                    row[columns[i]] = 0;
+
+            visitor.onCelRow(layer, frame, rows[y], row);
+        }
+    }
+
+    // the cel's codes are gathered as they are written, without their
+    // whitespace, and are not decoded
+    private void readCodes(
+            final int layer, final int frame, final int w, final int h
+    ) {
+        codes.setLength(0);
+        visitor.onCelStart(layer, frame, w, h);
+
+        int c;
+
+        while ((c = next()) != EOF && c != ENCLOSER_CLOSE)
+            codes.append((char) c);
+
+        visitor.onCelCodes(layer, frame, w, h, codes);
+    }
+
+    private int decode(final int length) {
+        final long argb = ColorCodec.tryDecode(code, 0, length);
+
+        if (argb == ColorCodec.INVALID) {
+            visitor.onError(ColorCodec.invalidMessage(code, 0, length));
+            return 0;
+        }
+
+        return (int) argb;
+    }
+
+    // cels are reported at the size of the part of the selection that they
+    // cover, and at least a pixel wide and tall
+    private int reportedWidth(final int[] columns) {
+        return Math.max(1, covered(columns));
+    }
+
+    private int reportedHeight(final int[] rows) {
+        return Math.max(1, covered(rows));
+    }
+
+    // as the selection is sampled in order, the reported indices of the
+    // columns (or rows) of a cel run from zero without gaps
+    private static int covered(final int[] map) {
+        int count = 0;
+
+        for (int index : map)
+            if (index != SKIPPED)
+                count++;
+
+        return count;
+    }
+
+    // the columns and rows of every cel are sampled at the project's scale,
+    // so a cel that is not the size of the project is not stretched to fit
+    private int[] columnMap(final int w) {
+        if (columns.length != w)
+            columns = celMap(canvasColumns, w);
+
+        return columns;
+    }
+
+    private int[] rowMap(final int h) {
+        if (rows.length != h)
+            rows = celMap(canvasRows, h);
+
+        return rows;
+    }
+
+    private static int[] celMap(final int[] canvasMap, final int size) {
+        final int[] map = new int[size];
+
+        Arrays.fill(map, SKIPPED);
+        System.arraycopy(canvasMap, 0, map, 0,
+                Math.min(size, canvasMap.length));
+
+        return map;
+    }
+
+    // maps each column (or row) of the project to its index in the reported
+    // project; sampling picks the nearest source index to the center of
+    // each sample
+    private static int[] indexMap(
+            final int size, final int crop, final int span, final int samples
+    ) {
+        final int[] map = new int[size];
+        Arrays.fill(map, SKIPPED);
+
+        for (int i = 0; i < samples; i++)
+            map[crop + (int) (((2L * i + 1) * span) / (2L * samples))] = i;
+
+        return map;
+    }
+
+    // reads past the tag separator; null if the block has no tag
+    private String readTag() {
+        final StringBuilder tag = new StringBuilder();
+        int c;
+
+        while ((c = next()) != EOF) {
+            switch (c) {
+                case TAG_SEPARATOR_CHAR -> {
+                    return tag.toString();
+                }
+                case ENCLOSER_OPEN -> {
+                    skipValue();
+                    skipValue();
+                    return null;
+                }
+                case ENCLOSER_CLOSE -> {
+                    return null;
+                }
+                default -> tag.append((char) c);
+            }
+        }
+
+        return null;
+    }
+
+    // reads up to and past the closer of the current block
+    private String readValue() {
+        final StringBuilder value = new StringBuilder();
+        int level = 0, c;
+
+        while ((c = next()) != EOF) {
+            if (c == ENCLOSER_OPEN)
+                level++;
+            else if (c == ENCLOSER_CLOSE && level-- == 0)
+                break;
+
+            value.append((char) c);
+        }
+
+        return value.toString();
+    }
+
+    private void skipValue() {
+        int level = 0, c;
+
+        while ((c = next()) != EOF) {
+            if (c == ENCLOSER_OPEN)
+                level++;
+            else if (c == ENCLOSER_CLOSE && level-- == 0)
+                return;
+        }
+    }
+
+    private int next() {
+        while (true) {
+            if (position == limit && !fill())
+                return EOF;
+
+            final char c = buffer[position++];
+
+            if (c != NL && c != CR && c != INDENT)
+                return c;
+        }
+    }
+
+    private boolean fill() {
+        if (failed)
+            return false;
+
+        int read;
+        consumed += limit;
+
+        try {
+            read = in.read(buffer, 0, buffer.length);
+        } catch (IOException e) {
+            ErrorSink.send("Could not read .stip contents.");
+            failed = true;
+            read = EOF;
+        }
+
+        position = 0;
+        limit = Math.max(read, 0);
+        return limit > 0;
+    }
+}
@@ -0,0 +1,58 @@
+package com.jordanbunke.stip_parser;
+
+import com.jordanbunke.stip_parser.logic.ErrorSink;
+import com.jordanbunke.stip_parser.rep.IROnionSkin;
+
+public interface StipVisitor {
+    // frame index reported for the shared content of a linked layer
+    int LINKED = -1;
+
+    default void onFileStandard(final double fileStandard) {}
+
+    default void onState(final int width, final int height, final int frameCount) {}
+
+    default void onFrameDurations(final double[] frameDurations) {}
+
+    default void onLayerStart(
+            final int layer, final String name, final boolean enabled,
+            final boolean celsLinked, final double opacity
+    ) {}
+
+    default void onOnionSkin(final int layer, final IROnionSkin onionSkin) {}
+
+    default void onCelStart(
+            final int layer, final int frame, final int width, final int height
+    ) {}
+
+    // 'argbRow' holds exactly the reported width of the cel, as given to
+    // onCelStart; it is reused between calls and must be copied to be retained
+    default void onCelRow(
+            final int layer, final int frame, final int y, final int[] argbRow
+    ) {}
+
+    // visitors that do not decode cels are given each cel's color codes
+    // through onCelCodes instead of its rows; such cels are reported whole,
+    // whatever the region and sample size of the load options
+    default boolean decodesCels() {
+        return true;
+    }
+
+    // 'codes' holds the comma-separated codes as written, without
+    // whitespace; it is reused between calls and must be copied to be retained
+    default void onCelCodes(
+            final int layer, final int frame, final int width, final int height,
+            final CharSequence codes
+    ) {}
+
+    default void onCelEnd(final int layer, final int frame) {}
+
+    default void onLayerEnd(final int layer) {}
+
+    default void onEnd() {}
+
+    // malformed content, e.g. an invalid color code, which is read as
+    // transparent; visitors may override this to record or reject it
+    default void onError(final String message) {
+        ErrorSink.send(message);
+    }
+}
@@ -0,0 +1,388 @@
+package com.jordanbunke.stip_parser;
+
+import com.jordanbunke.stip_parser.logic.ColorCodec;
+import com.jordanbunke.stip_parser.logic.ErrorSink;
+import com.jordanbunke.stip_parser.rep.IROnionSkin;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.IntStream;
+
+import static com.jordanbunke.stip_parser.StipFormat.*;
+
+public final class StipWriter implements AutoCloseable {
+    private static final int LAYER_INDENT = 1, LINKED_INDENT = 2,
+            FRAMES_INDENT = 2, FRAME_INDENT = 3;
+
+    private final Writer out;
+    private final int width, height, frameCount;
+    private final StringBuilder sb;
+
+    private boolean failed, inLayer, layerPending, layerLinked, inCel;
+    private int celsWritten, rowsWritten, celIndent, celWidth, celHeight;
+
+    public static Builder of(
+            final int width, final int height, final int frameCount
+    ) {
+        return new Builder(width, height, frameCount);
+    }
+
+    public static class Builder {
+        private final int width, height, frameCount;
+
+        private double[] frameDurations;
+
+        Builder(final int width, final int height, final int frameCount) {
+            this.width = width;
+            this.height = height;
+            this.frameCount = frameCount;
+
+            frameDurations = IntStream.range(0, frameCount)
+                    .mapToDouble(i -> 1.0).toArray();
+        }
+
+        public Builder setFrameDurations(final double... frameDurations) {
+            this.frameDurations = frameDurations;
+            return this;
+        }
+
+        public StipWriter open(final Path filepath) {
+            try {
+                return open(Files.newBufferedWriter(
+                        filepath, StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                ErrorSink.send("Could not open \"" + filepath +
+                        "\" for writing.");
+                return open(Writer.nullWriter());
+            }
+        }
+
+        public StipWriter open(final OutputStream out) {
+            return open(new BufferedWriter(new OutputStreamWriter(
+                    out, StandardCharsets.UTF_8)));
+        }
+
+        public StipWriter open(final WritableByteChannel channel) {
+            return open(new BufferedWriter(Channels.newWriter(
+                    channel, StandardCharsets.UTF_8)));
+        }
+
+        public StipWriter open(final Writer out) {
+            return new StipWriter(out, this);
+        }
+    }
+
+    private StipWriter(final Writer out, final Builder builder) {
+        this.out = out;
+
+        width = builder.width;
+        height = builder.height;
+        frameCount = builder.frameCount;
+
+        sb = new StringBuilder();
+        failed = false;
+        inLayer = false;
+        layerPending = false;
+        inCel = false;
+
+        // metadata: file standard
+        openWithTag(sb, FILE_STANDARD_TAG).append(Standards.NATIVE)
+                .append(ENCLOSER_CLOSE).append(NL);
+
+        // dims definition
+        openWithTag(sb, DIMENSION_TAG).append(width).append(CONTENT_SEPARATOR)
+                .append(height).append(ENCLOSER_CLOSE).append(NL);
+
+        // frame count definition
+        openWithTag(sb, FRAME_COUNT_TAG).append(frameCount)
+                .append(ENCLOSER_CLOSE).append(NL);
+
+        // frame durations definition
+        openWithTag(sb, FRAME_DURATIONS_TAG)
+                .append(serializeFrameDurations(builder.frameDurations))
+                .append(ENCLOSER_CLOSE).append(NL);
+
+        // layers tag opener
+        openWithTag(sb, LAYERS_TAG).append(NL);
+
+        flush();
+    }
+
+    public StipWriter beginLayer(final String name) {
+        return beginLayer(name, true, 1.0, false, IROnionSkin.trivial());
+    }
+
+    public StipWriter beginLayer(
+            final String name, final boolean enabled, final double opacity,
+            final boolean celsLinked, final IROnionSkin onionSkin
+    ) {
+        if (inLayer)
+            throw new IllegalStateException(
+                    "The previous layer was not ended");
+
+        closePendingLayer(true);
+
+        inLayer = true;
+        layerLinked = celsLinked;
+        celsWritten = 0;
+
+        // layer tag opener
+        indent(sb, LAYER_INDENT);
+        openWithTag(sb, LAYER_TAG).append(NL);
+
+        serializeAttribute(sb, LAYER_INDENT, LAYER_NAME_TAG, name);
+        serializeAttribute(sb, LAYER_INDENT, LAYER_ENABLED_STATUS_TAG, enabled);
+        serializeAttribute(sb, LAYER_INDENT, LAYER_LINKED_STATUS_TAG, celsLinked);
+        serializeAttribute(sb, LAYER_INDENT, LAYER_OPACITY_TAG, opacity);
+
+        // onion skin definition
+        sb.append(serializeOnionSkin(onionSkin));
+
+        if (!celsLinked) {
+            // frames tag opener
+            indent(sb, FRAMES_INDENT);
+            openWithTag(sb, FRAMES_TAG).append(NL);
+        }
+
+        flush();
+        return this;
+    }
+
+    public StipWriter beginCel() {
+        return beginCel(width, height);
+    }
+
+    // cels need not be the size of the project, as in ParserSerializer.save
+    public StipWriter beginCel(final int width, final int height) {
+        if (!inLayer || inCel)
+            throw new IllegalStateException(
+                    "Cels must be written one at a time within a layer");
+        if (celsWritten == celsExpected())
+            throw new IllegalStateException(
+                    "The layer already has all of its cels");
+
+        inCel = true;
+        rowsWritten = 0;
+        celWidth = width;
+        celHeight = height;
+        celIndent = layerLinked ? LINKED_INDENT : FRAME_INDENT;
+
+        // image type tag opener
+        indent(sb, celIndent);
+        openWithTag(sb, layerLinked ? LINKED_LAYER_TAG : FRAME_TAG).append(NL);
+
+        // dims definition
+        indent(sb, celIndent + 1);
+        openWithTag(sb, DIMENSION_TAG).append(width).append(CONTENT_SEPARATOR)
+                .append(height).append(ENCLOSER_CLOSE).append(NL);
+
+        // color tag opener
+        indent(sb, celIndent + 1);
+        openWithTag(sb, COLOR_TAG).append(NL);
+
+        return this;
+    }
+
+    public StipWriter writeRow(final int[] argbRow) {
+        if (!inCel)
+            throw new IllegalStateException("No cel has been begun");
+
+        final boolean lastRow = rowsWritten + 1 == celHeight;
+
+        indent(sb, celIndent + 2);
+
+        ColorCodec.encodeRun(argbRow, 0, celWidth, false, sb);
+
+        if (!lastRow)
+            sb.append(CONTENT_SEPARATOR);
+
+        sb.append(NL);
+        rowsWritten++;
+
+        if (lastRow)
+            endCel();
+
+        flush();
+        return this;
+    }
+
+    // writes a cel from codes that are already encoded, such as those
+    // copied from another file; 'codes' must be width * height codes as
+    // ColorCodec.isCanonicalRun accepts them
+    public StipWriter writeCelCodes(
+            final int width, final int height, final CharSequence codes
+    ) {
+        beginCel(width, height);
+
+        final int length = codes.length();
+        int start = 0, x = 0;
+
+        for (int i = 0; i <= length && inCel; i++) {
+            if (i < length && codes.charAt(i) != CONTENT_SEPARATOR_CHAR)
+                continue;
+
+            if (++x == width) {
+                final boolean lastRow = rowsWritten + 1 == celHeight;
+
+                indent(sb, celIndent + 2);
+                sb.append(codes, start, i);
+
+                if (!lastRow)
+                    sb.append(CONTENT_SEPARATOR);
+
+                sb.append(NL);
+                rowsWritten++;
+                x = 0;
+                start = i + 1;
+
+                if (lastRow)
+                    endCel();
+
+                flush();
+            }
+        }
+
+        // rows that the codes fall short of are left transparent
+        final int[] transparent = new int[width];
+
+        while (inCel)
+            writeRow(transparent);
+
+        return this;
+    }
+
+    public StipWriter writeCel(final int[] argb) {
+        final int[] row = new int[width];
+        beginCel();
+
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(argb, y * width, row, 0, width);
+            writeRow(row);
+        }
+
+        return this;
+    }
+
+    private void endCel() {
+        inCel = false;
+        celsWritten++;
+
+        // color closer
+        indent(sb, celIndent + 1);
+        sb.append(ENCLOSER_CLOSE).append(NL);
+
+        // image type tag closer
+        indent(sb, celIndent);
+        sb.append(ENCLOSER_CLOSE).append(!layerLinked &&
+                celsWritten < frameCount ? CONTENT_SEPARATOR : "").append(NL);
+    }
+
+    public StipWriter endLayer() {
+        if (!inLayer || inCel)
+            throw new IllegalStateException("No layer can be ended");
+
+        // cels that were never written are left transparent
+        final int[] transparent = new int[width];
+
+        while (celsWritten < celsExpected()) {
+            beginCel();
+
+            while (inCel)
+                writeRow(transparent);
+        }
+
+        if (!layerLinked) {
+            // frames tag closer
+            indent(sb, FRAMES_INDENT);
+            sb.append(ENCLOSER_CLOSE).append(NL);
+        }
+
+        // layer tag closer; the separator depends on whether another follows
+        indent(sb, LAYER_INDENT);
+        sb.append(ENCLOSER_CLOSE);
+
+        inLayer = false;
+        layerPending = true;
+
+        flush();
+        return this;
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    public int frameCount() {
+        return frameCount;
+    }
+
+    private int celsExpected() {
+        return layerLinked ? 1 : frameCount;
+    }
+
+    private void closePendingLayer(final boolean notLast) {
+        if (!layerPending)
+            return;
+
+        sb.append(notLast ? CONTENT_SEPARATOR : "").append(NL);
+        layerPending = false;
+    }
+
+    public boolean failed() {
+        return failed;
+    }
+
+    @Override
+    public void close() {
+        if (inLayer) {
+            final int[] transparent = new int[celWidth];
+
+            while (inCel)
+                writeRow(transparent);
+
+            endLayer();
+        }
+
+        closePendingLayer(false);
+
+        // layers tag closer
+        sb.append(ENCLOSER_CLOSE).append(NL);
+        flush();
+
+        try {
+            out.close();
+        } catch (IOException e) {
+            fail();
+        }
+    }
+
+    private void flush() {
+        if (failed) {
+            sb.setLength(0);
+            return;
+        }
+
+        try {
+            out.append(sb);
+        } catch (IOException e) {
+            fail();
+        }
+
+        sb.setLength(0);
+    }
+
+    private void fail() {
+        if (!failed)
+            ErrorSink.send("Could not write .stip contents.");
+
+        failed = true;
+    }
+}
@@ -0,0 +1,259 @@
+package com.jordanbunke.stip_parser.batch;
+
+import com.jordanbunke.stip_parser.StipReader;
+import com.jordanbunke.stip_parser.StipVisitor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+public final class BatchConverter {
+    public static final String DEFAULT_GLOB = "**.{stip,stippal}";
+
+    private static final int DEF_IO_THREADS = 2;
+    private static final long DEF_MAX_BYTES_IN_FLIGHT = 256L << 20,
+            DEF_MAX_DECODED_BYTES_IN_FLIGHT = 1L << 30;
+
+    private final BatchTask task;
+    private final int threads, ioThreads;
+    private final int maxBytesInFlight, maxDecodedBytesInFlight;
+    private final Path outputDirectory;
+
+    public static Builder of(final BatchTask task) {
+        return new Builder(task);
+    }
+
+    public static class Builder {
+        private final BatchTask task;
+
+        private int threads, ioThreads;
+        private long maxBytesInFlight, maxDecodedBytesInFlight;
+        private Path outputDirectory;
+
+        Builder(final BatchTask task) {
+            this.task = task;
+
+            threads = Runtime.getRuntime().availableProcessors();
+            ioThreads = DEF_IO_THREADS;
+            maxBytesInFlight = DEF_MAX_BYTES_IN_FLIGHT;
+            maxDecodedBytesInFlight = DEF_MAX_DECODED_BYTES_IN_FLIGHT;
+            outputDirectory = null;
+        }
+
+        public Builder setThreads(final int threads) {
+            this.threads = Math.max(1, threads);
+            return this;
+        }
+
+        public Builder setIOThreads(final int ioThreads) {
+            this.ioThreads = Math.max(1, ioThreads);
+            return this;
+        }
+
+        public Builder setMaxBytesInFlight(final long maxBytesInFlight) {
+            this.maxBytesInFlight = maxBytesInFlight;
+            return this;
+        }
+
+        // bounds the decoded projects that files are processed into, as
+        // estimated from each project's dimensions, frames and layers
+        public Builder setMaxDecodedBytesInFlight(
+                final long maxDecodedBytesInFlight
+        ) {
+            this.maxDecodedBytesInFlight = maxDecodedBytesInFlight;
+            return this;
+        }
+
+        // files are rewritten in place if no output directory is set
+        public Builder setOutputDirectory(final Path outputDirectory) {
+            this.outputDirectory = outputDirectory;
+            return this;
+        }
+
+        public BatchConverter build() {
+            return new BatchConverter(this);
+        }
+    }
+
+    private BatchConverter(final Builder builder) {
+        task = builder.task;
+        threads = builder.threads;
+        ioThreads = builder.ioThreads;
+        maxBytesInFlight = (int) Math.min(Integer.MAX_VALUE,
+                Math.max(1L, builder.maxBytesInFlight));
+        maxDecodedBytesInFlight = (int) Math.min(Integer.MAX_VALUE,
+                Math.max(1L, builder.maxDecodedBytesInFlight));
+        outputDirectory = builder.outputDirectory;
+    }
+
+    public static List<Path> find(final Path root, final String glob) {
+        final PathMatcher matcher =
+                FileSystems.getDefault().getPathMatcher("glob:" + glob);
+
+        if (Files.isRegularFile(root))
+            return List.of(root);
+
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(p -> matcher.matches(root.relativize(p)))
+                    .sorted().toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public BatchReport run(final Path root, final String glob) {
+        final Path absolute = root.toAbsolutePath().normalize(),
+                base = Files.isDirectory(absolute)
+                        ? absolute : absolute.getParent();
+
+        return run(base, find(absolute, glob));
+    }
+
+    public BatchReport run(final Path root, final List<Path> sources) {
+        final ExecutorService io = Executors.newFixedThreadPool(ioThreads);
+        final ForkJoinPool workers = new ForkJoinPool(threads);
+        final Semaphore budget = new Semaphore(maxBytesInFlight),
+                decodedBudget = new Semaphore(maxDecodedBytesInFlight);
+        final List<CompletableFuture<BatchResult>> pending = new ArrayList<>();
+        final long start = System.nanoTime();
+
+        try {
+            for (Path source : sources) {
+                // reserve memory before reading, so at most the budget's
+                // worth of file contents are in flight at once
+                final int permits = permitsFor(source);
+                budget.acquireUninterruptibly(permits);
+
+                final Path target = targetFor(root, source);
+
+                pending.add(CompletableFuture
+                        .supplyAsync(() -> read(source), io)
+                        .thenApplyAsync(read -> process(source, target,
+                                read, decodedBudget), workers)
+                        .whenComplete((result, e) -> budget.release(permits)));
+            }
+
+            final List<BatchResult> results = pending.stream()
+                    .map(CompletableFuture::join).toList();
+
+            return new BatchReport(results, System.nanoTime() - start);
+        } finally {
+            io.shutdown();
+            workers.shutdown();
+        }
+    }
+
+    private record Read(String contents, long bytes, long nanos, Throwable error) {}
+
+    private static Read read(final Path source) {
+        final long start = System.nanoTime();
+
+        try {
+            final byte[] bytes = Files.readAllBytes(source);
+
+            return new Read(new String(bytes, StandardCharsets.UTF_8),
+                    bytes.length, System.nanoTime() - start, null);
+        } catch (IOException | RuntimeException e) {
+            return new Read(null, 0L, System.nanoTime() - start, e);
+        }
+    }
+
+    private BatchResult process(
+            final Path source, final Path target, final Read read,
+            final Semaphore decodedBudget
+    ) {
+        if (read.error() != null)
+            return BatchResult.failure(source, read.error(),
+                    read.bytes(), read.nanos());
+
+        // decoded projects have a budget of their own, so that files
+        // waiting on it hold no permits that running files need
+        final int permits = (int) Math.min(maxDecodedBytesInFlight,
+                Math.max(1L, decodedBytes(source, read.contents())));
+        decodedBudget.acquireUninterruptibly(permits);
+
+        final long start = System.nanoTime();
+
+        try {
+            if (target.getParent() != null)
+                Files.createDirectories(target.getParent());
+
+            task.process(source, read.contents(), target);
+
+            return BatchResult.success(source, read.bytes(),
+                    read.nanos() + System.nanoTime() - start);
+        } catch (IOException | RuntimeException e) {
+            return BatchResult.failure(source, e, read.bytes(),
+                    read.nanos() + System.nanoTime() - start);
+        } finally {
+            decodedBudget.release(permits);
+        }
+    }
+
+    // every cel of every layer at the project's size, as loading builds it;
+    // palettes are charged their contents
+    private static long decodedBytes(final Path source, final String contents) {
+        if (BatchTask.isPalette(source))
+            return contents.length();
+
+        final long[] size = { 0L, 0L };
+
+        try {
+            // cels are passed over as codes, so nothing is decoded
+            StipReader.read(contents, new StipVisitor() {
+                @Override
+                public void onState(
+                        final int width, final int height, final int frameCount
+                ) {
+                    // saturates rather than overflows for absurd headers
+                    size[0] = (long) ((double) width * height *
+                            Integer.BYTES * frameCount);
+                }
+
+                @Override
+                public void onLayerStart(
+                        final int layer, final String name,
+                        final boolean enabled, final boolean celsLinked,
+                        final double opacity
+                ) {
+                    size[1]++;
+                }
+
+                @Override
+                public boolean decodesCels() {
+                    return false;
+                }
+            });
+        } catch (RuntimeException e) {
+            // a malformed header fails the task itself; charge the contents
+            return contents.length();
+        }
+
+        return (long) ((double) size[0] * size[1]);
+    }
+
+    private int permitsFor(final Path source) {
+        try {
+            return (int) Math.min(maxBytesInFlight,
+                    Math.max(1L, Files.size(source)));
+        } catch (IOException e) {
+            return 1;
+        }
+    }
+
+    private Path targetFor(final Path root, final Path source) {
+        if (outputDirectory == null)
+            return source;
+
+        return outputDirectory.resolve(root.relativize(source).toString());
+    }
+}
@@ -0,0 +1,69 @@
+package com.jordanbunke.stip_parser.batch;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+public final class BatchMain {
+    private static final int SUCCESS = 0, FAILURE = 1, USAGE = 2;
+
+    private static final String USAGE_TEXT = """
+            Usage: BatchMain <validate|upgrade> <file or directory>
+                    [--glob <pattern>] [--out <directory>]
+                    [--threads <n>] [--max-bytes-in-flight <bytes>]
+                    [--max-decoded-bytes-in-flight <bytes>]""";
+
+    private static final Map<String, BatchTask> TASKS = Map.of(
+            "validate", BatchTask.VALIDATE,
+            "upgrade", BatchTask.UPGRADE);
+
+    public static void main(final String[] args) {
+        System.exit(run(args));
+    }
+
+    private static int run(final String[] args) {
+        if (args.length < 2 || !TASKS.containsKey(args[0]))
+            return usage();
+
+        final BatchConverter.Builder builder = BatchConverter.of(TASKS.get(args[0]));
+        final Path root = Path.of(args[1]);
+        String glob = BatchConverter.DEFAULT_GLOB;
+
+        for (int i = 2; i < args.length; i += 2) {
+            if (i + 1 == args.length)
+                return usage();
+
+            final String value = args[i + 1];
+
+            try {
+                switch (args[i]) {
+                    case "--glob" -> glob = value;
+                    case "--out" -> builder.setOutputDirectory(Path.of(value));
+                    case "--threads" ->
+                            builder.setThreads(Integer.parseInt(value));
+                    case "--max-bytes-in-flight" ->
+                            builder.setMaxBytesInFlight(Long.parseLong(value));
+                    case "--max-decoded-bytes-in-flight" ->
+                            builder.setMaxDecodedBytesInFlight(Long.parseLong(value));
+                    default -> {
+                        return usage();
+                    }
+                }
+            } catch (NumberFormatException e) {
+                return usage();
+            }
+        }
+
+        final BatchReport report = builder.build().run(root, glob);
+
+        for (BatchResult failure : report.failures())
+            System.err.println(failure.source() + ": " + failure.error());
+
+        System.out.println(report);
+        return report.failures().isEmpty() ? SUCCESS : FAILURE;
+    }
+
+    private static int usage() {
+        System.err.println(USAGE_TEXT);
+        return USAGE;
+    }
+}
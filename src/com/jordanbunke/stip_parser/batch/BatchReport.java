@@ -0,0 +1,39 @@
+package com.jordanbunke.stip_parser.batch;
+
+import java.util.List;
+
+public record BatchReport(List<BatchResult> results, long elapsedNanos) {
+    private static final double NANOS_PER_SECOND = 1e9, BYTES_PER_MB = 1 << 20;
+
+    public List<BatchResult> failures() {
+        return results.stream().filter(r -> !r.succeeded()).toList();
+    }
+
+    public int succeeded() {
+        return results.size() - failures().size();
+    }
+
+    public long bytes() {
+        return results.stream().mapToLong(BatchResult::bytes).sum();
+    }
+
+    public double filesPerSecond() {
+        return results.size() / seconds();
+    }
+
+    public double megabytesPerSecond() {
+        return (bytes() / BYTES_PER_MB) / seconds();
+    }
+
+    private double seconds() {
+        return Math.max(elapsedNanos, 1L) / NANOS_PER_SECOND;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "%d files (%d failed), %.1f MB in %.2f s: %.1f files/s, %.1f MB/s",
+                results.size(), failures().size(), bytes() / BYTES_PER_MB,
+                seconds(), filesPerSecond(), megabytesPerSecond());
+    }
+}
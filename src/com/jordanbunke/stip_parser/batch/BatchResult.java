@@ -0,0 +1,24 @@
+package com.jordanbunke.stip_parser.batch;
+
+import java.nio.file.Path;
+
+public record BatchResult(
+        Path source, boolean succeeded, String error, long bytes, long nanos
+) {
+    static BatchResult success(
+            final Path source, final long bytes, final long nanos
+    ) {
+        return new BatchResult(source, true, "", bytes, nanos);
+    }
+
+    static BatchResult failure(
+            final Path source, final Throwable cause,
+            final long bytes, final long nanos
+    ) {
+        final String error = cause.getMessage() == null
+                ? cause.getClass().getSimpleName()
+                : cause.getClass().getSimpleName() + ": " + cause.getMessage();
+
+        return new BatchResult(source, false, error, bytes, nanos);
+    }
+}
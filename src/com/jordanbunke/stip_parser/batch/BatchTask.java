@@ -0,0 +1,51 @@
+package com.jordanbunke.stip_parser.batch;
+
+import com.jordanbunke.stip_parser.ParserSerializer;
+import com.jordanbunke.stip_parser.StandardUpgrader;
+import com.jordanbunke.stip_parser.StipReader;
+import com.jordanbunke.stip_parser.StipVisitor;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+@FunctionalInterface
+public interface BatchTask {
+    String PALETTE_EXTENSION = ".stippal";
+
+    void process(Path source, String contents, Path target);
+
+    // fails files with malformed content, such as invalid color codes,
+    // that loading would otherwise only report
+    BatchTask VALIDATE = (source, contents, target) -> {
+        final List<String> errors = new ArrayList<>();
+
+        if (isPalette(source))
+            ParserSerializer.loadPalette(contents, errors::add);
+        else
+            StipReader.read(contents, new StipVisitor() {
+                @Override
+                public void onError(final String message) {
+                    errors.add(message);
+                }
+            });
+
+        if (!errors.isEmpty())
+            throw new IllegalArgumentException(errors.get(0) +
+                    (errors.size() > 1 ? " (and " + (errors.size() - 1) +
+                            " more)" : ""));
+    };
+
+    // rewrites each file at the current palette or native file standard
+    BatchTask UPGRADE = (source, contents, target) -> {
+        if (isPalette(source))
+            ParserSerializer.savePalette(
+                    ParserSerializer.loadPalette(contents), target);
+        else
+            StandardUpgrader.upgrade(contents, target);
+    };
+
+    static boolean isPalette(final Path filepath) {
+        return filepath.getFileName().toString().endsWith(PALETTE_EXTENSION);
+    }
+}
@@ -0,0 +1,171 @@
+package com.jordanbunke.stip_parser.cache;
+
+import com.jordanbunke.delta_time.image.GameImage;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+public final class CelCache {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final long capacity;
+    private final LinkedHashMap<CelKey, GameImage> entries;
+    private final Map<CelKey, CompletableFuture<GameImage>> pending;
+
+    private long size, hits, misses, evictions;
+
+    public enum Eviction {
+        LRU, FIFO
+    }
+
+    public record Stats(
+            long hits, long misses, long evictions, long size, int count
+    ) {
+        public double hitRate() {
+            final long requests = hits + misses;
+            return requests == 0 ? 0d : hits / (double) requests;
+        }
+    }
+
+    public CelCache(final long capacity) {
+        this(capacity, Eviction.LRU);
+    }
+
+    public CelCache(final long capacity, final Eviction eviction) {
+        this.capacity = capacity;
+
+        entries = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR,
+                eviction == Eviction.LRU);
+        pending = new ConcurrentHashMap<>();
+
+        size = 0L;
+        hits = 0L;
+        misses = 0L;
+        evictions = 0L;
+    }
+
+    public GameImage get(final CelKey key, final Supplier<GameImage> decoder) {
+        final CompletableFuture<GameImage> decoding = new CompletableFuture<>(),
+                inFlight;
+
+        // a decode is only registered while the cel is not yet stored, and
+        // only unregistered once it is, so no cel is decoded twice
+        synchronized (entries) {
+            final GameImage cached = entries.get(key);
+
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+
+            inFlight = pending.putIfAbsent(key, decoding);
+
+            // only the thread that decodes the cel counts as a miss
+            if (inFlight == null)
+                misses++;
+            else
+                hits++;
+        }
+
+        if (inFlight != null)
+            return inFlight.join();
+
+        try {
+            final GameImage cel = decoder.get();
+            store(key, cel);
+            decoding.complete(cel);
+
+            return cel;
+        } catch (RuntimeException e) {
+            decoding.completeExceptionally(e);
+            throw e;
+        } finally {
+            pending.remove(key);
+        }
+    }
+
+    private void store(final CelKey key, final GameImage cel) {
+        final long weight = weigh(cel);
+
+        // a cel that could never fit is handed out but not retained
+        if (weight > capacity)
+            return;
+
+        synchronized (entries) {
+            final GameImage replaced = entries.put(key, cel);
+
+            if (replaced != null)
+                size -= weigh(replaced);
+
+            size += weight;
+
+            final Iterator<Map.Entry<CelKey, GameImage>> eldest =
+                    entries.entrySet().iterator();
+
+            while (size > capacity && eldest.hasNext()) {
+                final Map.Entry<CelKey, GameImage> entry = eldest.next();
+
+                size -= weigh(entry.getValue());
+                eldest.remove();
+                evictions++;
+            }
+        }
+    }
+
+    // drops the cels of every version of the file
+    public void invalidate(final Path filepath) {
+        final Path path = filepath.toAbsolutePath().normalize();
+        invalidate(key -> key.file().path().equals(path));
+    }
+
+    // drops the cels of this version of the file only
+    public void invalidate(final FileIdentity file) {
+        invalidate(key -> key.file().equals(file));
+    }
+
+    // dropped cels count as evictions
+    private void invalidate(final Predicate<CelKey> matches) {
+        synchronized (entries) {
+            final Iterator<Map.Entry<CelKey, GameImage>> it =
+                    entries.entrySet().iterator();
+
+            while (it.hasNext()) {
+                final Map.Entry<CelKey, GameImage> entry = it.next();
+
+                if (matches.test(entry.getKey())) {
+                    size -= weigh(entry.getValue());
+                    it.remove();
+                    evictions++;
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            size = 0L;
+        }
+    }
+
+    public Stats stats() {
+        synchronized (entries) {
+            return new Stats(hits, misses, evictions, size, entries.size());
+        }
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    private static long weigh(final GameImage cel) {
+        return (long) cel.getWidth() * cel.getHeight() * Integer.BYTES;
+    }
+}
@@ -0,0 +1,3 @@
+package com.jordanbunke.stip_parser.cache;
+
+public record CelKey(FileIdentity file, int layer, int frame) {}
@@ -0,0 +1,25 @@
+package com.jordanbunke.stip_parser.cache;
+
+import com.jordanbunke.delta_time.error.GameError;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public record FileIdentity(Path path, long modified, long size) {
+    private static final long UNKNOWN = -1L;
+
+    public static FileIdentity of(final Path filepath) {
+        final Path path = filepath.toAbsolutePath().normalize();
+
+        try {
+            return new FileIdentity(path,
+                    Files.getLastModifiedTime(path).toMillis(),
+                    Files.size(path));
+        } catch (IOException e) {
+            GameError.send("Could not read the attributes of \"" +
+                    path + "\".");
+            return new FileIdentity(path, UNKNOWN, UNKNOWN);
+        }
+    }
+}
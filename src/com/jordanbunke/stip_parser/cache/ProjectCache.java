@@ -0,0 +1,251 @@
+package com.jordanbunke.stip_parser.cache;
+
+import com.jordanbunke.delta_time.error.GameError;
+import com.jordanbunke.delta_time.image.GameImage;
+import com.jordanbunke.stip_parser.BinaryForm;
+import com.jordanbunke.stip_parser.ParserSerializer;
+import com.jordanbunke.stip_parser.logic.XXHash64;
+import com.jordanbunke.stip_parser.rep.IRLayer;
+import com.jordanbunke.stip_parser.rep.IRState;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class ProjectCache {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final String DISK_EXTENSION = ".stipc", TEMP_SUFFIX = ".tmp";
+
+    private final long capacity;
+    private final Path diskDirectory;
+    private final LinkedHashMap<Fingerprint, IRState> entries;
+    private final Map<Fingerprint, Long> weights;
+    private final Map<Fingerprint, CompletableFuture<IRState>> pending;
+
+    private long size, hits, diskHits, misses, evictions;
+
+    public record Stats(
+            long hits, long diskHits, long misses,
+            long evictions, long size, int count
+    ) {}
+
+    // the length guards against two files of different sizes that share
+    // a hash
+    private record Fingerprint(long hash, int length) {
+        String fileName() {
+            return String.format("%016x-%d", hash, length);
+        }
+    }
+
+    public ProjectCache(final long capacity) {
+        this(capacity, null);
+    }
+
+    public ProjectCache(final long capacity, final Path diskDirectory) {
+        this.capacity = capacity;
+        this.diskDirectory = diskDirectory;
+
+        entries = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+        weights = new HashMap<>();
+        pending = new ConcurrentHashMap<>();
+
+        size = 0L;
+        hits = 0L;
+        diskHits = 0L;
+        misses = 0L;
+        evictions = 0L;
+    }
+
+    public IRState load(final Path filepath) {
+        try {
+            return load(Files.readAllBytes(filepath));
+        } catch (IOException e) {
+            GameError.send("Could not read \"" + filepath + "\".");
+            return new IRState(1, 1, 1, new double[] { 1.0 }, new IRLayer[] {});
+        }
+    }
+
+    public IRState load(final String file) {
+        return load(file.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // every caller that loads the same content is handed the same state,
+    // which must therefore be treated as immutable
+    private IRState load(final byte[] bytes) {
+        final Fingerprint fingerprint =
+                new Fingerprint(XXHash64.hash(bytes), bytes.length);
+        final CompletableFuture<IRState> loading = new CompletableFuture<>(),
+                inFlight;
+
+        // only one thread parses a given file; the others wait on its result
+        synchronized (entries) {
+            final IRState cached = entries.get(fingerprint);
+
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+
+            inFlight = pending.putIfAbsent(fingerprint, loading);
+
+            if (inFlight != null)
+                hits++;
+        }
+
+        if (inFlight != null)
+            return inFlight.join();
+
+        try {
+            IRState state = readFromDisk(fingerprint);
+
+            if (state != null) {
+                synchronized (entries) {
+                    diskHits++;
+                }
+            } else {
+                synchronized (entries) {
+                    misses++;
+                }
+
+                state = ParserSerializer.load(
+                        new String(bytes, StandardCharsets.UTF_8));
+                writeToDisk(fingerprint, state);
+            }
+
+            store(fingerprint, state);
+            loading.complete(state);
+
+            return state;
+        } catch (RuntimeException e) {
+            loading.completeExceptionally(e);
+            throw e;
+        } finally {
+            pending.remove(fingerprint);
+        }
+    }
+
+    private void store(final Fingerprint fingerprint, final IRState state) {
+        final long weight = weigh(state);
+
+        if (weight > capacity)
+            return;
+
+        synchronized (entries) {
+            if (entries.put(fingerprint, state) != null)
+                size -= weights.get(fingerprint);
+
+            weights.put(fingerprint, weight);
+            size += weight;
+
+            final Iterator<Fingerprint> eldest = entries.keySet().iterator();
+
+            while (size > capacity && eldest.hasNext()) {
+                final Fingerprint evicted = eldest.next();
+
+                size -= weights.remove(evicted);
+                eldest.remove();
+                evictions++;
+            }
+        }
+    }
+
+    private IRState readFromDisk(final Fingerprint fingerprint) {
+        if (diskDirectory == null)
+            return null;
+
+        final Path filepath = diskPath(fingerprint);
+
+        if (!Files.isRegularFile(filepath))
+            return null;
+
+        try (InputStream in = Files.newInputStream(filepath)) {
+            return BinaryForm.read(in);
+        } catch (IOException e) {
+            GameError.send("Discarding unreadable cache entry \"" +
+                    filepath + "\".");
+            return null;
+        }
+    }
+
+    private void writeToDisk(final Fingerprint fingerprint, final IRState state) {
+        if (diskDirectory == null)
+            return;
+
+        final Path filepath = diskPath(fingerprint);
+        Path temp = null;
+
+        // each writer, in this process or another, has a temp file of its
+        // own, so entries are only ever replaced whole
+        try {
+            Files.createDirectories(diskDirectory);
+            temp = Files.createTempFile(diskDirectory,
+                    fingerprint.fileName(), TEMP_SUFFIX);
+
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                BinaryForm.write(state, out);
+            }
+
+            Files.move(temp, filepath, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            GameError.send("Could not write cache entry \"" +
+                    filepath + "\".");
+            deleteQuietly(temp);
+        }
+    }
+
+    private static void deleteQuietly(final Path temp) {
+        if (temp == null)
+            return;
+
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException ignored) {}
+    }
+
+    private Path diskPath(final Fingerprint fingerprint) {
+        return diskDirectory.resolve(fingerprint.fileName() + DISK_EXTENSION);
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            weights.clear();
+            size = 0L;
+        }
+    }
+
+    public Stats stats() {
+        synchronized (entries) {
+            return new Stats(hits, diskHits, misses,
+                    evictions, size, entries.size());
+        }
+    }
+
+    private static long weigh(final IRState state) {
+        final Set<GameImage> counted =
+                Collections.newSetFromMap(new IdentityHashMap<>());
+        long weight = 0L;
+
+        for (IRLayer layer : state.layers()) {
+            final List<GameImage> images = new ArrayList<>();
+            images.add(layer.linkedContent());
+            images.addAll(Arrays.asList(layer.cels()));
+
+            for (GameImage image : images)
+                if (image != null && counted.add(image))
+                    weight += (long) image.getWidth() *
+                            image.getHeight() * Integer.BYTES;
+        }
+
+        return weight;
+    }
+}
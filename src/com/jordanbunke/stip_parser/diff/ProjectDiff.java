@@ -0,0 +1,342 @@
+package com.jordanbunke.stip_parser.diff;
+
+import com.jordanbunke.stip_parser.StipReader;
+import com.jordanbunke.stip_parser.StipVisitor;
+import com.jordanbunke.stip_parser.diff.ProjectSignature.LayerSignature;
+import com.jordanbunke.stip_parser.logic.XXHash64;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.IntStream;
+
+public record ProjectDiff(
+        boolean identical, List<MetadataChange> metadata,
+        List<LayerChange> layers
+) {
+    public static final int ABSENT = -1;
+
+    private static final int HASH_BUFFER_SIZE = 1 << 16;
+
+    private static final String FILE_STANDARD = "file_standard",
+            DIMS = "dims", FRAME_COUNT = "frame_count",
+            FRAME_DURATIONS = "frame_durations", NAME = "name",
+            ENABLED = "enabled", LINKED = "linked", OPACITY = "opacity",
+            ONION_SKIN = "onion_skin";
+
+    public record MetadataChange(String field, String before, String after) {}
+
+    // 'before' and 'after' are the layer's index in each revision, or ABSENT
+    public record LayerChange(
+            Kind kind, int before, int after, List<String> attributes,
+            List<Integer> changedFrames, List<PixelChange> pixels
+    ) {
+        public enum Kind {
+            ADDED, REMOVED, CHANGED
+        }
+    }
+
+    // the number of differing pixels of a cel, and the box that bounds them
+    public record PixelChange(
+            int frame, int count, int x, int y, int width, int height
+    ) {}
+
+    public static ProjectDiff compare(final Path before, final Path after) {
+        return compare(before, after, false);
+    }
+
+    // pixels are only retained for cels whose hashes differ, and only if
+    // 'pixelLevel' is set; both files are then read a second time
+    public static ProjectDiff compare(
+            final Path before, final Path after, final boolean pixelLevel
+    ) {
+        // files of the same size are hashed before either is signed, so
+        // that unchanged files are never parsed
+        if (sameBytes(before, after))
+            return new ProjectDiff(true, List.of(), List.of());
+
+        final ProjectDiff diff = compare(
+                ProjectSignature.of(before), ProjectSignature.of(after));
+
+        return pixelLevel && !diff.identical()
+                ? withPixels(diff, before, after) : diff;
+    }
+
+    private static boolean sameBytes(final Path before, final Path after) {
+        try {
+            return Files.size(before) == Files.size(after) &&
+                    streamHash(before) == streamHash(after);
+        } catch (IOException e) {
+            // the files are reported as unreadable when they are signed
+            return false;
+        }
+    }
+
+    private static long streamHash(final Path filepath) throws IOException {
+        final XXHash64 hash = new XXHash64();
+        final byte[] buffer = new byte[HASH_BUFFER_SIZE];
+
+        try (InputStream in = Files.newInputStream(filepath)) {
+            int read;
+
+            while ((read = in.read(buffer)) != -1)
+                hash.update(buffer, 0, read);
+        }
+
+        return hash.digest();
+    }
+
+    public static ProjectDiff compare(
+            final ProjectSignature before, final ProjectSignature after
+    ) {
+        if (before.fileHash() == after.fileHash())
+            return new ProjectDiff(true, List.of(), List.of());
+
+        final List<MetadataChange> metadata = new ArrayList<>();
+
+        if (before.fileStandard() != after.fileStandard())
+            metadata.add(new MetadataChange(FILE_STANDARD,
+                    String.valueOf(before.fileStandard()),
+                    String.valueOf(after.fileStandard())));
+        if (before.width() != after.width() ||
+                before.height() != after.height())
+            metadata.add(new MetadataChange(DIMS,
+                    before.width() + "x" + before.height(),
+                    after.width() + "x" + after.height()));
+        if (before.frameCount() != after.frameCount())
+            metadata.add(new MetadataChange(FRAME_COUNT,
+                    String.valueOf(before.frameCount()),
+                    String.valueOf(after.frameCount())));
+        if (!before.frameDurations().equals(after.frameDurations()))
+            metadata.add(new MetadataChange(FRAME_DURATIONS,
+                    before.frameDurations().toString(),
+                    after.frameDurations().toString()));
+
+        final List<LayerChange> layers = layerChanges(before.layers(),
+                after.layers(), Math.max(before.frameCount(), after.frameCount()));
+
+        // files that differ only in formatting have no changes to report
+        return new ProjectDiff(metadata.isEmpty() && layers.isEmpty(),
+                List.copyOf(metadata), List.copyOf(layers));
+    }
+
+    // layers are matched by name in order; unmatched layers between two
+    // matches are paired up by position, and any left over were added or
+    // removed
+    private static List<LayerChange> layerChanges(
+            final List<LayerSignature> before, final List<LayerSignature> after,
+            final int frameCount
+    ) {
+        final int n = before.size(), m = after.size();
+        final int[][] lcs = new int[n + 1][m + 1];
+
+        for (int i = n - 1; i >= 0; i--)
+            for (int j = m - 1; j >= 0; j--)
+                lcs[i][j] = before.get(i).name().equals(after.get(j).name())
+                        ? lcs[i + 1][j + 1] + 1
+                        : Math.max(lcs[i + 1][j], lcs[i][j + 1]);
+
+        final List<LayerChange> changes = new ArrayList<>();
+        final List<Integer> removed = new ArrayList<>(), added = new ArrayList<>();
+        int i = 0, j = 0;
+
+        while (i < n || j < m) {
+            if (i < n && j < m &&
+                    before.get(i).name().equals(after.get(j).name())) {
+                pair(removed, added, before, after, frameCount, changes);
+                compareLayers(i++, j++, before, after, frameCount, changes);
+            } else if (j == m || (i < n && lcs[i + 1][j] >= lcs[i][j + 1]))
+                removed.add(i++);
+            else
+                added.add(j++);
+        }
+
+        pair(removed, added, before, after, frameCount, changes);
+
+        return changes;
+    }
+
+    private static void pair(
+            final List<Integer> removed, final List<Integer> added,
+            final List<LayerSignature> before, final List<LayerSignature> after,
+            final int frameCount, final List<LayerChange> changes
+    ) {
+        final int paired = Math.min(removed.size(), added.size());
+
+        for (int k = 0; k < paired; k++)
+            compareLayers(removed.get(k), added.get(k),
+                    before, after, frameCount, changes);
+
+        for (int k = paired; k < removed.size(); k++)
+            changes.add(new LayerChange(LayerChange.Kind.REMOVED,
+                    removed.get(k), ABSENT, List.of(), List.of(), List.of()));
+
+        for (int k = paired; k < added.size(); k++)
+            changes.add(new LayerChange(LayerChange.Kind.ADDED,
+                    ABSENT, added.get(k), List.of(), List.of(), List.of()));
+
+        removed.clear();
+        added.clear();
+    }
+
+    private static void compareLayers(
+            final int i, final int j,
+            final List<LayerSignature> before, final List<LayerSignature> after,
+            final int frameCount, final List<LayerChange> changes
+    ) {
+        final LayerSignature a = before.get(i), b = after.get(j);
+        final List<String> attributes = new ArrayList<>();
+
+        if (!a.name().equals(b.name()))
+            attributes.add(NAME);
+        if (a.enabled() != b.enabled())
+            attributes.add(ENABLED);
+        if (a.celsLinked() != b.celsLinked())
+            attributes.add(LINKED);
+        if (a.opacity() != b.opacity())
+            attributes.add(OPACITY);
+        if (!a.onionSkin().equals(b.onionSkin()))
+            attributes.add(ONION_SKIN);
+
+        final List<Integer> changedFrames = IntStream.range(0, frameCount)
+                .filter(f -> a.celHash(f) != b.celHash(f)).boxed().toList();
+
+        if (!attributes.isEmpty() || !changedFrames.isEmpty())
+            changes.add(new LayerChange(LayerChange.Kind.CHANGED, i, j,
+                    List.copyOf(attributes), changedFrames, List.of()));
+    }
+
+    private static ProjectDiff withPixels(
+            final ProjectDiff diff, final Path before, final Path after
+    ) {
+        final Map<Integer, Set<Integer>> wantedBefore = new HashMap<>(),
+                wantedAfter = new HashMap<>();
+
+        for (LayerChange change : diff.layers()) {
+            if (change.kind() != LayerChange.Kind.CHANGED)
+                continue;
+
+            for (int frame : change.changedFrames()) {
+                wantedBefore.computeIfAbsent(change.before(),
+                        k -> new HashSet<>()).add(frame);
+                wantedAfter.computeIfAbsent(change.after(),
+                        k -> new HashSet<>()).add(frame);
+            }
+        }
+
+        final CelCollector a = new CelCollector(wantedBefore),
+                b = new CelCollector(wantedAfter);
+        StipReader.read(before, a);
+        StipReader.read(after, b);
+
+        final List<LayerChange> layers = new ArrayList<>();
+
+        for (LayerChange change : diff.layers()) {
+            final List<PixelChange> pixels = new ArrayList<>();
+
+            if (change.kind() == LayerChange.Kind.CHANGED)
+                for (int frame : change.changedFrames())
+                    pixels.add(pixelChange(frame,
+                            a.cel(change.before(), frame),
+                            b.cel(change.after(), frame)));
+
+            layers.add(new LayerChange(change.kind(), change.before(),
+                    change.after(), change.attributes(),
+                    change.changedFrames(), List.copyOf(pixels)));
+        }
+
+        return new ProjectDiff(false, diff.metadata(), List.copyOf(layers));
+    }
+
+    private static PixelChange pixelChange(
+            final int frame, final Cel a, final Cel b
+    ) {
+        final int w = Math.max(a.width(), b.width()),
+                h = Math.max(a.height(), b.height());
+        int count = 0, minX = w, minY = h, maxX = -1, maxY = -1;
+
+        for (int y = 0; y < h; y++)
+            for (int x = 0; x < w; x++)
+                if (a.pixel(x, y) != b.pixel(x, y)) {
+                    count++;
+                    minX = Math.min(minX, x);
+                    minY = Math.min(minY, y);
+                    maxX = Math.max(maxX, x);
+                    maxY = Math.max(maxY, y);
+                }
+
+        return count == 0 ? new PixelChange(frame, 0, 0, 0, 0, 0)
+                : new PixelChange(frame, count, minX, minY,
+                maxX - minX + 1, maxY - minY + 1);
+    }
+
+    private record Cel(int width, int height, int[] argb) {
+        private static final Cel EMPTY = new Cel(0, 0, new int[0]);
+
+        int pixel(final int x, final int y) {
+            if (x >= width || y >= height)
+                return 0;
+
+            final int c = argb[y * width + x];
+            return c >>> 24 == 0 ? 0 : c;
+        }
+    }
+
+    // keeps the decoded pixels of the wanted cels only
+    private static final class CelCollector implements StipVisitor {
+        private final Map<Integer, Set<Integer>> wanted;
+        private final Map<Long, Cel> cels;
+        private final Set<Integer> linkedLayers;
+
+        private Cel cel;
+
+        CelCollector(final Map<Integer, Set<Integer>> wanted) {
+            this.wanted = wanted;
+
+            cels = new HashMap<>();
+            linkedLayers = new HashSet<>();
+        }
+
+        @Override
+        public void onCelStart(
+                final int layer, final int frame, final int width, final int height
+        ) {
+            final Set<Integer> frames = wanted.get(layer);
+
+            cel = frames != null && (frame == LINKED || frames.contains(frame))
+                    ? new Cel(width, height, new int[width * height]) : null;
+        }
+
+        @Override
+        public void onCelRow(
+                final int layer, final int frame, final int y, final int[] argbRow
+        ) {
+            if (cel != null)
+                System.arraycopy(argbRow, 0, cel.argb(),
+                        y * cel.width(), cel.width());
+        }
+
+        @Override
+        public void onCelEnd(final int layer, final int frame) {
+            if (cel == null)
+                return;
+
+            if (frame == LINKED)
+                linkedLayers.add(layer);
+
+            cels.put(key(layer, frame), cel);
+            cel = null;
+        }
+
+        Cel cel(final int layer, final int frame) {
+            return cels.getOrDefault(key(layer,
+                    linkedLayers.contains(layer) ? LINKED : frame), Cel.EMPTY);
+        }
+
+        private static long key(final int layer, final int frame) {
+            return ((long) layer << 32) | (frame & 0xffffffffL);
+        }
+    }
+}
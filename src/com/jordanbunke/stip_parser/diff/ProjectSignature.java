@@ -0,0 +1,233 @@
+package com.jordanbunke.stip_parser.diff;
+
+import com.jordanbunke.stip_parser.StipReader;
+import com.jordanbunke.stip_parser.StipVisitor;
+import com.jordanbunke.stip_parser.logic.ColorCodec;
+import com.jordanbunke.stip_parser.logic.ErrorSink;
+import com.jordanbunke.stip_parser.logic.XXHash64;
+import com.jordanbunke.stip_parser.rep.IROnionSkin;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// A compact summary of a .stip file: its metadata, and a hash of the contents
+// of every cel. Signatures are small enough to be kept in an index
+// and compared later without reading either file again.
+public record ProjectSignature(
+        long fileHash, double fileStandard,
+        int width, int height, int frameCount, List<Double> frameDurations,
+        List<LayerSignature> layers
+) {
+    public record LayerSignature(
+            String name, boolean enabled, boolean celsLinked, double opacity,
+            IROnionSkin onionSkin, List<Long> celHashes
+    ) {
+        // linked layers share one hash across all of their frames
+        public long celHash(final int frame) {
+            if (celsLinked)
+                return celHashes.get(0);
+
+            return frame < celHashes.size() ? celHashes.get(frame) : MISSING;
+        }
+    }
+
+    static final long MISSING = 0L;
+
+    // the file is hashed as it is read, so only one buffer of it is held
+    // in memory at a time; a file that cannot be read in full is signed
+    // as if it were empty
+    public static ProjectSignature of(final Path filepath) {
+        final XXHash64 file = new XXHash64();
+        final Hasher hasher = new Hasher();
+        boolean read;
+
+        try (HashingStream in = new HashingStream(
+                Files.newInputStream(filepath), file)) {
+            read = StipReader.read(new InputStreamReader(
+                    in, StandardCharsets.UTF_8), hasher);
+
+            // content after the layers still counts towards the file hash
+            in.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            read = false;
+        }
+
+        if (!read) {
+            ErrorSink.send("Could not read \"" + filepath + "\".");
+            return of(new byte[0]);
+        }
+
+        return hasher.build(file.digest());
+    }
+
+    public static ProjectSignature of(final byte[] contents) {
+        final Hasher hasher = new Hasher();
+        StipReader.read(new String(contents, StandardCharsets.UTF_8), hasher);
+
+        return hasher.build(XXHash64.hash(contents));
+    }
+
+    private static final class HashingStream extends FilterInputStream {
+        private final XXHash64 hash;
+
+        HashingStream(final InputStream in, final XXHash64 hash) {
+            super(in);
+
+            this.hash = hash;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+
+            if (b != -1)
+                hash.update(new byte[] { (byte) b }, 0, 1);
+
+            return b;
+        }
+
+        @Override
+        public int read(
+                final byte[] b, final int off, final int len
+        ) throws IOException {
+            final int read = super.read(b, off, len);
+
+            if (read > 0)
+                hash.update(b, off, read);
+
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            // skipped bytes are read so that they are hashed too
+            final byte[] skipped = new byte[(int) Math.min(n, 1 << 13)];
+            final int read = read(skipped, 0, skipped.length);
+
+            return Math.max(read, 0);
+        }
+    }
+
+    private static final class Hasher implements StipVisitor {
+        private final List<LayerSignature> layers;
+        private final List<Long> frames;
+        private final XXHash64 cel;
+
+        private double fileStandard;
+        private int width, height, frameCount;
+        private List<Double> frameDurations;
+
+        private String name;
+        private boolean enabled, celsLinked;
+        private double opacity;
+        private IROnionSkin onionSkin;
+        private byte[] text;
+        private long linked;
+        private boolean hasLinked;
+
+        Hasher() {
+            layers = new ArrayList<>();
+            frames = new ArrayList<>();
+            cel = new XXHash64();
+            text = new byte[0];
+
+            frameDurations = List.of();
+        }
+
+        @Override
+        public void onFileStandard(final double fileStandard) {
+            this.fileStandard = fileStandard;
+        }
+
+        @Override
+        public void onState(final int width, final int height, final int frameCount) {
+            this.width = width;
+            this.height = height;
+            this.frameCount = frameCount;
+        }
+
+        @Override
+        public void onFrameDurations(final double[] frameDurations) {
+            this.frameDurations = Arrays.stream(frameDurations)
+                    .boxed().toList();
+        }
+
+        @Override
+        public void onLayerStart(
+                final int layer, final String name, final boolean enabled,
+                final boolean celsLinked, final double opacity
+        ) {
+            this.name = name;
+            this.enabled = enabled;
+            this.celsLinked = celsLinked;
+            this.opacity = opacity;
+
+            onionSkin = IROnionSkin.trivial();
+            hasLinked = false;
+            frames.clear();
+        }
+
+        @Override
+        public void onOnionSkin(final int layer, final IROnionSkin onionSkin) {
+            this.onionSkin = onionSkin;
+        }
+
+        // cels are hashed by their canonical codes, which are the same for
+        // the same pixels whatever the formatting of the file; only cels
+        // that are not written canonically are decoded
+        @Override
+        public boolean decodesCels() {
+            return false;
+        }
+
+        @Override
+        public void onCelCodes(
+                final int layer, final int frame, final int width,
+                final int height, final CharSequence codes
+        ) {
+            final CharSequence canonical = ColorCodec.canonicalRun(
+                    codes, width * height, this::onError);
+            final int length = canonical.length();
+
+            if (text.length < length)
+                text = new byte[length];
+
+            // canonical codes are ASCII
+            for (int i = 0; i < length; i++)
+                text[i] = (byte) canonical.charAt(i);
+
+            cel.reset().update(width).update(height).update(text, 0, length);
+        }
+
+        @Override
+        public void onCelEnd(final int layer, final int frame) {
+            // MISSING is reserved for cels that are absent
+            final long hash = cel.digest() | 1L;
+
+            if (frame == LINKED) {
+                linked = hash;
+                hasLinked = true;
+            } else
+                frames.add(hash);
+        }
+
+        @Override
+        public void onLayerEnd(final int layer) {
+            final List<Long> celHashes = hasLinked
+                    ? List.of(linked) : List.copyOf(frames);
+
+            layers.add(new LayerSignature(name, enabled,
+                    celsLinked && hasLinked, opacity, onionSkin, celHashes));
+        }
+
+        ProjectSignature build(final long fileHash) {
+            return new ProjectSignature(fileHash, fileStandard, width,
+                    height, frameCount, frameDurations, List.copyOf(layers));
+        }
+    }
+}
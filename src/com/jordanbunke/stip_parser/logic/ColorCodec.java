@@ -0,0 +1,246 @@
+package com.jordanbunke.stip_parser.logic;
+
+import java.util.function.Consumer;
+
+public final class ColorCodec {
+    public static final long INVALID = -1L;
+
+    private static final char TRANSPARENT_CODE = 't', SEPARATOR = ',';
+    private static final int TRANSPARENT = 0, OPAQUE_ALPHA = 0xff,
+            RGB_LENGTH = 6, ARGB_LENGTH = 8, ASCII_LIMIT = 0x80,
+            RUN_CHUNK = 1 << 10;
+    private static final long OPAQUE_DIGITS = ('f' << 8) | 'f';
+
+    private static final HexBackend HEX = HexBackend.select();
+
+    public static HexBackend backend() {
+        return HEX;
+    }
+
+    // invalid codes are reported and decoded as transparent
+    public static int decode(
+            final char[] code, final int offset, final int length
+    ) {
+        final long argb = tryDecode(code, offset, length);
+
+        if (argb == INVALID) {
+            ErrorSink.send(invalidMessage(code, offset, length));
+            return TRANSPARENT;
+        }
+
+        return (int) argb;
+    }
+
+    // the code's ARGB value as an unsigned int, or INVALID
+    public static long tryDecode(
+            final char[] code, final int offset, final int length
+    ) {
+        if (length == 1 && code[offset] == TRANSPARENT_CODE)
+            return TRANSPARENT;
+
+        if (length != RGB_LENGTH && length != ARGB_LENGTH)
+            return INVALID;
+
+        long digits = 0L;
+
+        for (int i = 0; i < length; i++) {
+            final char c = code[offset + i];
+
+            if (c >= ASCII_LIMIT)
+                return INVALID;
+
+            digits = (digits << 8) | c;
+        }
+
+        // codes without alpha are fully opaque
+        if (length == RGB_LENGTH)
+            digits = (digits << 16) | OPAQUE_DIGITS;
+
+        final long rgba = HEX.decode(digits);
+
+        if (rgba == HexBackend.INVALID)
+            return INVALID;
+
+        return ((rgba >>> 8) | (rgba << 24)) & 0xffffffffL;
+    }
+
+    public static String invalidMessage(
+            final char[] code, final int offset, final int length
+    ) {
+        return "String \"" + new String(code, offset, length) +
+                "\" is not a valid color code.";
+    }
+
+    public static int decodeRun(
+            final char[] text, final int offset, final int length,
+            final int[] out
+    ) {
+        return decodeRun(text, offset, length, out, ErrorSink::send);
+    }
+
+    // decodes the comma-separated codes in text[offset, offset + length)
+    // into 'out'; returns the number of codes, even if more than fit
+    public static int decodeRun(
+            final char[] text, final int offset, final int length,
+            final int[] out, final Consumer<String> onInvalid
+    ) {
+        final int end = offset + length;
+        int count = 0, start = offset;
+
+        for (int i = offset; i <= end; i++) {
+            if (i < end && text[i] != SEPARATOR)
+                continue;
+
+            if (i > start) {
+                if (count < out.length) {
+                    final long argb = tryDecode(text, start, i - start);
+
+                    if (argb == INVALID)
+                        onInvalid.accept(invalidMessage(text, start, i - start));
+
+                    out[count] = argb == INVALID ? TRANSPARENT : (int) argb;
+                }
+
+                count++;
+            }
+
+            start = i + 1;
+        }
+
+        return count;
+    }
+
+    // whether 'text' holds exactly 'count' comma-separated codes that are
+    // each what encodeRun would write for their color, in which case the
+    // text can be copied instead of being decoded and encoded again
+    public static boolean isCanonicalRun(
+            final CharSequence text, final int count
+    ) {
+        final int length = text.length();
+        int codes = 0, start = 0;
+
+        if (length == 0)
+            return count == 0;
+
+        for (int i = 0; i <= length; i++) {
+            if (i < length && text.charAt(i) != SEPARATOR)
+                continue;
+
+            if (++codes > count || !isCanonical(text, start, i - start))
+                return false;
+
+            start = i + 1;
+        }
+
+        return codes == count;
+    }
+
+    // the codes of a run as encodeRun would write them; codes that already
+    // are are returned as they are, without being decoded
+    public static CharSequence canonicalRun(
+            final CharSequence codes, final int count,
+            final Consumer<String> onInvalid
+    ) {
+        if (isCanonicalRun(codes, count))
+            return codes;
+
+        final char[] text = codes.toString().toCharArray();
+        final int[] argb = new int[count];
+        decodeRun(text, 0, text.length, argb, onInvalid);
+
+        final StringBuilder sb = new StringBuilder(count);
+        encodeRun(argb, 0, count, false, sb);
+
+        return sb;
+    }
+
+    private static boolean isCanonical(
+            final CharSequence text, final int offset, final int length
+    ) {
+        if (length == 1)
+            return text.charAt(offset) == TRANSPARENT_CODE;
+
+        if (length != RGB_LENGTH && length != ARGB_LENGTH)
+            return false;
+
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(offset + i);
+
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f'))
+                return false;
+        }
+
+        // fully opaque colors drop their alpha, and transparent ones are 't'
+        if (length == ARGB_LENGTH) {
+            final char high = text.charAt(offset + RGB_LENGTH),
+                    low = text.charAt(offset + RGB_LENGTH + 1);
+
+            return !(high == 'f' && low == 'f') && !(high == '0' && low == '0');
+        }
+
+        return true;
+    }
+
+    public static String encode(
+            final int argb, final boolean preserveRGBForTransparent
+    ) {
+        final StringBuilder sb = new StringBuilder(ARGB_LENGTH);
+        encode(argb, preserveRGBForTransparent, sb);
+
+        return sb.toString();
+    }
+
+    public static void encode(
+            final int argb, final boolean preserveRGBForTransparent,
+            final StringBuilder sb
+    ) {
+        final char[] code = new char[ARGB_LENGTH];
+        sb.append(code, 0, encode(argb, preserveRGBForTransparent, code, 0));
+    }
+
+    // comma-separated codes for argb[offset, offset + length)
+    public static void encodeRun(
+            final int[] argb, final int offset, final int length,
+            final boolean preserveRGBForTransparent, final StringBuilder sb
+    ) {
+        // codes are gathered in chunks rather than appended char by char
+        final char[] chunk = new char[Math.min(length, RUN_CHUNK) *
+                (ARGB_LENGTH + 1)];
+        int position = 0;
+
+        for (int i = 0; i < length; i++) {
+            if (i > 0)
+                chunk[position++] = SEPARATOR;
+
+            position = encode(argb[offset + i], preserveRGBForTransparent,
+                    chunk, position);
+
+            if (position > chunk.length - (ARGB_LENGTH + 1)) {
+                sb.append(chunk, 0, position);
+                position = 0;
+            }
+        }
+
+        sb.append(chunk, 0, position);
+    }
+
+    private static int encode(
+            final int argb, final boolean preserveRGBForTransparent,
+            final char[] out, final int position
+    ) {
+        final int alpha = argb >>> 24;
+
+        if (alpha == 0 && !preserveRGBForTransparent) {
+            out[position] = TRANSPARENT_CODE;
+            return position + 1;
+        }
+
+        final long digits = HEX.encode((argb << 8) | alpha);
+        final int length = alpha == OPAQUE_ALPHA ? RGB_LENGTH : ARGB_LENGTH;
+
+        for (int i = 0; i < length; i++)
+            out[position + i] = (char) ((digits >>> (56 - (i << 3))) & 0xff);
+
+        return position + length;
+    }
+}
@@ -0,0 +1,27 @@
+package com.jordanbunke.stip_parser.logic;
+
+import java.util.function.Consumer;
+
+// Where the headless classes report errors. A sink set by the caller is
+// always kept. Otherwise, errors go to standard error until ParserSerializer
+// is loaded, which routes them to delta-time's GameError like the rest of
+// the library.
+public final class ErrorSink {
+    private static volatile Consumer<String> sink = System.err::println;
+    private static boolean set = false;
+
+    public static synchronized void set(final Consumer<String> sink) {
+        ErrorSink.sink = sink;
+        set = true;
+    }
+
+    // installs 'sink' unless the caller has already set one
+    public static synchronized void setDefault(final Consumer<String> sink) {
+        if (!set)
+            ErrorSink.sink = sink;
+    }
+
+    public static void send(final String message) {
+        sink.accept(message);
+    }
+}
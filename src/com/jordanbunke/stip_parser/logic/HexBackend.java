@@ -0,0 +1,119 @@
+package com.jordanbunke.stip_parser.logic;
+
+import java.util.Arrays;
+
+// Both backends work on eight ASCII hex digits packed into a long, the first
+// digit in the most significant byte. SWAR ("SIMD within a register")
+// validates and converts all eight digits at once with plain long
+// arithmetic, so it needs no incubator modules or JVM flags.
+public enum HexBackend {
+    SCALAR {
+        @Override
+        long decode(final long digits) {
+            long value = 0L;
+
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                final int nibble = NIBBLES[(int) (digits >>> shift) & 0x7f];
+
+                if (nibble == NOT_HEX)
+                    return INVALID;
+
+                value = (value << 4) | nibble;
+            }
+
+            return value;
+        }
+
+        @Override
+        long encode(final int value) {
+            long digits = 0L;
+
+            for (int shift = 28; shift >= 0; shift -= 4)
+                digits = (digits << 8) | HEX_DIGITS[(value >>> shift) & 0xf];
+
+            return digits;
+        }
+    },
+    SWAR {
+        @Override
+        long decode(final long digits) {
+            final long folded = digits | (0x20 * ONES);
+
+            // a byte is at least 'lo' if adding 0x80 - lo sets its high bit,
+            // and at most 'hi' if adding 0x7f - hi leaves it clear
+            final long numeric = (digits + (0x80 - '0') * ONES) &
+                    ~(digits + (0x7f - '9') * ONES) & HIGH_BITS,
+                    alpha = (folded + (0x80 - 'a') * ONES) &
+                            ~(folded + (0x7f - 'f') * ONES) & HIGH_BITS;
+
+            if ((numeric | alpha) != HIGH_BITS)
+                return INVALID;
+
+            // '0'-'9' and 'a'-'f' / 'A'-'F' share their low nibble layout
+            long nibbles = (digits & (0x0f * ONES)) + (alpha >>> 7) * 9;
+
+            nibbles = (nibbles | (nibbles >>> 4)) & 0x00ff00ff00ff00ffL;
+            nibbles = (nibbles | (nibbles >>> 8)) & 0x0000ffff0000ffffL;
+
+            return (nibbles | (nibbles >>> 16)) & 0xffffffffL;
+        }
+
+        @Override
+        long encode(final int value) {
+            long nibbles = value & 0xffffffffL;
+
+            nibbles = (nibbles | (nibbles << 16)) & 0x0000ffff0000ffffL;
+            nibbles = (nibbles | (nibbles << 8)) & 0x00ff00ff00ff00ffL;
+            nibbles = (nibbles | (nibbles << 4)) & (0x0f * ONES);
+
+            final long letters =
+                    ((nibbles + (0x80 - 10) * ONES) & HIGH_BITS) >>> 7;
+
+            return nibbles + '0' * ONES + letters * ('a' - '0' - 10);
+        }
+    };
+
+    public static final String PROPERTY = "stip_parser.hex";
+
+    static final long INVALID = -1L;
+
+    private static final long ONES = 0x0101010101010101L,
+            HIGH_BITS = 0x8080808080808080L;
+    private static final int NOT_HEX = -1;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int[] NIBBLES = new int[128];
+
+    static {
+        Arrays.fill(NIBBLES, NOT_HEX);
+
+        for (char c = '0'; c <= '9'; c++)
+            NIBBLES[c] = c - '0';
+        for (char c = 'a'; c <= 'f'; c++)
+            NIBBLES[c] = 10 + (c - 'a');
+        for (char c = 'A'; c <= 'F'; c++)
+            NIBBLES[c] = 10 + (c - 'A');
+    }
+
+    // the value of the digits, or INVALID if any byte is not a hex digit;
+    // every byte must be in the ASCII range
+    abstract long decode(long digits);
+
+    // eight lowercase hex digits for 'value'
+    abstract long encode(int value);
+
+    // the backend named by the system property, or SWAR by default
+    static HexBackend select() {
+        HexBackend backend = SWAR;
+
+        try {
+            final String name = System.getProperty(PROPERTY, SWAR.name());
+
+            // matched by hand rather than with valueOf, which reflects
+            for (HexBackend candidate : values())
+                if (candidate.name().equalsIgnoreCase(name.trim()))
+                    backend = candidate;
+        } catch (SecurityException ignored) {}
+
+        return backend;
+    }
+}
@@ -1,11 +1,9 @@
 package com.jordanbunke.stip_parser.logic;
 
-import com.jordanbunke.delta_time.error.GameError;
-
 public final class ParseHex {
     public static int hexToInt(final String hexSequence) {
         if (hexSequence.isEmpty() || !validHexSequence(hexSequence)) {
-            GameError.send("String \"" + hexSequence +
+            ErrorSink.send("String \"" + hexSequence +
                     "\" is not a valid hex sequence.");
             return 0;
         }
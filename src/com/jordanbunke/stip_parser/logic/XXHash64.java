@@ -0,0 +1,157 @@
+package com.jordanbunke.stip_parser.logic;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+public final class XXHash64 {
+    private static final long
+            PRIME_1 = 0x9E3779B185EBCA87L,
+            PRIME_2 = 0xC2B2AE3D27D4EB4FL,
+            PRIME_3 = 0x165667B19E3779F9L,
+            PRIME_4 = 0x85EBCA77C2B2AE63L,
+            PRIME_5 = 0x27D4EB2F165667C5L;
+
+    private static final int STRIPE = 32;
+
+    private static final VarHandle LONGS = MethodHandles
+            .byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN),
+            INTS = MethodHandles
+                    .byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final long seed;
+    private final byte[] buffer, scratch;
+
+    private long v1, v2, v3, v4, total;
+    private int buffered;
+
+    public XXHash64() {
+        this(0L);
+    }
+
+    public XXHash64(final long seed) {
+        this.seed = seed;
+        buffer = new byte[STRIPE];
+        scratch = new byte[Long.BYTES];
+
+        reset();
+    }
+
+    public static long hash(final byte[] bytes) {
+        return new XXHash64().update(bytes, 0, bytes.length).digest();
+    }
+
+    public XXHash64 reset() {
+        v1 = seed + PRIME_1 + PRIME_2;
+        v2 = seed + PRIME_2;
+        v3 = seed;
+        v4 = seed - PRIME_1;
+        total = 0L;
+        buffered = 0;
+
+        return this;
+    }
+
+    public XXHash64 update(final byte[] bytes, final int offset, final int length) {
+        int processed = offset;
+        final int end = offset + length;
+
+        total += length;
+
+        // top up a partial stripe left over from the previous update
+        if (buffered > 0) {
+            final int fill = Math.min(STRIPE - buffered, length);
+            System.arraycopy(bytes, processed, buffer, buffered, fill);
+            buffered += fill;
+            processed += fill;
+
+            if (buffered < STRIPE)
+                return this;
+
+            consumeStripe(buffer, 0);
+            buffered = 0;
+        }
+
+        while (processed + STRIPE <= end) {
+            consumeStripe(bytes, processed);
+            processed += STRIPE;
+        }
+
+        buffered = end - processed;
+        System.arraycopy(bytes, processed, buffer, 0, buffered);
+
+        return this;
+    }
+
+    public XXHash64 update(final int value) {
+        INTS.set(scratch, 0, value);
+
+        return update(scratch, 0, Integer.BYTES);
+    }
+
+    public XXHash64 update(final long value) {
+        LONGS.set(scratch, 0, value);
+
+        return update(scratch, 0, Long.BYTES);
+    }
+
+    public long digest() {
+        long h;
+
+        if (total >= STRIPE) {
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) +
+                    Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = mergeRound(h, v1);
+            h = mergeRound(h, v2);
+            h = mergeRound(h, v3);
+            h = mergeRound(h, v4);
+        } else
+            h = seed + PRIME_5;
+
+        h += total;
+
+        int processed = 0;
+
+        while (processed + Long.BYTES <= buffered) {
+            h ^= round(0L, (long) LONGS.get(buffer, processed));
+            h = Long.rotateLeft(h, 27) * PRIME_1 + PRIME_4;
+            processed += Long.BYTES;
+        }
+
+        if (processed + Integer.BYTES <= buffered) {
+            h ^= ((int) INTS.get(buffer, processed) & 0xFFFFFFFFL) * PRIME_1;
+            h = Long.rotateLeft(h, 23) * PRIME_2 + PRIME_3;
+            processed += Integer.BYTES;
+        }
+
+        while (processed < buffered) {
+            h ^= (buffer[processed] & 0xFFL) * PRIME_5;
+            h = Long.rotateLeft(h, 11) * PRIME_1;
+            processed++;
+        }
+
+        // avalanche
+        h ^= h >>> 33;
+        h *= PRIME_2;
+        h ^= h >>> 29;
+        h *= PRIME_3;
+        h ^= h >>> 32;
+
+        return h;
+    }
+
+    private void consumeStripe(final byte[] bytes, final int offset) {
+        v1 = round(v1, (long) LONGS.get(bytes, offset));
+        v2 = round(v2, (long) LONGS.get(bytes, offset + Long.BYTES));
+        v3 = round(v3, (long) LONGS.get(bytes, offset + 2 * Long.BYTES));
+        v4 = round(v4, (long) LONGS.get(bytes, offset + 3 * Long.BYTES));
+    }
+
+    private static long round(final long acc, final long input) {
+        return Long.rotateLeft(acc + input * PRIME_2, 31) * PRIME_1;
+    }
+
+    private static long mergeRound(final long acc, final long value) {
+        return (acc ^ round(0L, value)) * PRIME_1 + PRIME_4;
+    }
+}
@@ -0,0 +1,238 @@
+package com.jordanbunke.stip_parser.palette;
+
+import com.jordanbunke.delta_time.image.GameImage;
+import com.jordanbunke.stip_parser.rep.IRLayer;
+import com.jordanbunke.stip_parser.rep.IRPalette;
+import com.jordanbunke.stip_parser.rep.IRState;
+
+import java.awt.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+// Maps colors to their nearest palette entry by squared euclidean distance
+// over (r, g, b, a); ties go to the earliest entry. Fully transparent
+// pixels are left as they are.
+public final class PaletteMapper {
+    private static final int DIMENSIONS = 4, TRANSPARENT = 0,
+            PARALLEL_THRESHOLD = 1 << 14, MEMO_LIMIT = 1 << 20;
+
+    private final int[] colors;
+    private final int[][] points;
+
+    // entry indices arranged as a k-d tree: each range's middle element
+    // splits the rest of the range on the axis of its depth
+    private final int[] tree;
+    private final Map<Integer, Integer> memo;
+
+    private PaletteMapper(final int[] colors) {
+        this.colors = colors;
+
+        points = new int[colors.length][];
+        memo = new ConcurrentHashMap<>();
+
+        for (int i = 0; i < colors.length; i++) {
+            points[i] = channels(colors[i]);
+
+            // exact matches never need to search the tree
+            memo.putIfAbsent(colors[i], colors[i]);
+        }
+
+        tree = IntStream.range(0, colors.length).toArray();
+        build(0, colors.length, 0);
+    }
+
+    public static PaletteMapper of(final IRPalette palette) {
+        final Color[] entries = palette.colors();
+        final int[] colors = new int[entries.length];
+
+        for (int i = 0; i < entries.length; i++)
+            colors[i] = entries[i].getRGB();
+
+        return of(colors);
+    }
+
+    public static PaletteMapper of(final int... argb) {
+        return new PaletteMapper(argb.clone());
+    }
+
+    public int map(final int argb) {
+        if (argb >>> 24 == 0 || colors.length == 0)
+            return argb >>> 24 == 0 ? TRANSPARENT : argb;
+
+        final Integer cached = memo.get(argb);
+
+        if (cached != null)
+            return cached;
+
+        final int nearest = colors[nearest(argb)];
+
+        // inputs with very many distinct colors are still mapped, just
+        // no longer remembered
+        if (memo.size() < MEMO_LIMIT)
+            memo.put(argb, nearest);
+
+        return nearest;
+    }
+
+    // in place
+    public void remap(final int[] raster) {
+        if (raster.length < PARALLEL_THRESHOLD) {
+            remap(raster, 0, raster.length);
+            return;
+        }
+
+        final int chunks = (raster.length + PARALLEL_THRESHOLD - 1) /
+                PARALLEL_THRESHOLD;
+
+        IntStream.range(0, chunks).parallel().forEach(i ->
+                remap(raster, i * PARALLEL_THRESHOLD, Math.min(raster.length,
+                        (i + 1) * PARALLEL_THRESHOLD)));
+    }
+
+    private void remap(final int[] raster, final int from, final int to) {
+        int last = TRANSPARENT, mapped = TRANSPARENT;
+
+        for (int i = from; i < to; i++) {
+            // runs of one color are common in pixel art
+            if (raster[i] != last) {
+                last = raster[i];
+                mapped = map(last);
+            }
+
+            raster[i] = mapped;
+        }
+    }
+
+    public GameImage remap(final GameImage image) {
+        final int w = image.getWidth(), h = image.getHeight();
+        final int[] raster = image.getRGB(0, 0, w, h, null, 0, w);
+
+        remap(raster);
+
+        final GameImage remapped = new GameImage(w, h);
+        remapped.setRGB(0, 0, w, h, raster, 0, w);
+
+        return remapped.submit();
+    }
+
+    // cels shared within or between layers are only remapped once, and
+    // stay shared in the result
+    public IRState remap(final IRState state) {
+        final Map<GameImage, GameImage> remapped = new IdentityHashMap<>();
+
+        for (IRLayer layer : state.layers()) {
+            if (layer.linkedContent() != null)
+                remapped.put(layer.linkedContent(), null);
+
+            for (int i = 0; i < layer.cels().length; i++)
+                remapped.put(layer.getCel(i), null);
+        }
+
+        final List<GameImage> distinct = new ArrayList<>(remapped.keySet());
+        final GameImage[] results = new GameImage[distinct.size()];
+
+        IntStream.range(0, results.length).parallel().forEach(i ->
+                results[i] = remap(distinct.get(i)));
+
+        for (int i = 0; i < results.length; i++)
+            remapped.put(distinct.get(i), results[i]);
+
+        final IRLayer[] layers = Arrays.stream(state.layers())
+                .map(layer -> new IRLayer(layer.name(),
+                        IntStream.range(0, layer.cels().length)
+                                .mapToObj(i -> remapped.get(layer.getCel(i)))
+                                .toArray(GameImage[]::new),
+                        remapped.get(layer.linkedContent()), layer.opacity(),
+                        layer.enabled(), layer.celsLinked(),
+                        layer.onionSkinOn(), layer.onionSkin()))
+                .toArray(IRLayer[]::new);
+
+        return new IRState(state.width(), state.height(),
+                state.frameCount(), state.frameDurations(), layers);
+    }
+
+    // the number of distinct colors with a known mapping
+    public int memoized() {
+        return memo.size();
+    }
+
+    private void build(final int from, final int to, final int depth) {
+        if (to - from <= 1)
+            return;
+
+        final int axis = depth % DIMENSIONS, middle = (from + to) >>> 1;
+        final Integer[] range = new Integer[to - from];
+
+        for (int i = from; i < to; i++)
+            range[i - from] = tree[i];
+
+        Arrays.sort(range, Comparator.comparingInt(
+                (Integer entry) -> points[entry][axis])
+                .thenComparingInt(entry -> entry));
+
+        for (int i = from; i < to; i++)
+            tree[i] = range[i - from];
+
+        build(from, middle, depth + 1);
+        build(middle + 1, to, depth + 1);
+    }
+
+    private int nearest(final int argb) {
+        final int[] target = channels(argb);
+        final long[] best = { Long.MAX_VALUE, Integer.MAX_VALUE };
+
+        search(target, 0, colors.length, 0, best);
+
+        return (int) best[1];
+    }
+
+    // 'best' holds the nearest distance so far and the entry it belongs to
+    private void search(
+            final int[] target, final int from, final int to,
+            final int depth, final long[] best
+    ) {
+        if (from >= to)
+            return;
+
+        final int axis = depth % DIMENSIONS, middle = (from + to) >>> 1,
+                entry = tree[middle];
+        final long distance = distance(target, points[entry]);
+
+        if (distance < best[0] || (distance == best[0] && entry < best[1])) {
+            best[0] = distance;
+            best[1] = entry;
+        }
+
+        final long offset = target[axis] - points[entry][axis];
+        final boolean lower = offset < 0;
+
+        search(target, lower ? from : middle + 1, lower ? middle : to,
+                depth + 1, best);
+
+        // the far side can only hold a nearer entry, or an equally near
+        // earlier one, if the splitting plane is close enough
+        if (offset * offset <= best[0])
+            search(target, lower ? middle + 1 : from, lower ? to : middle,
+                    depth + 1, best);
+    }
+
+    private static long distance(final int[] a, final int[] b) {
+        long sum = 0L;
+
+        for (int i = 0; i < DIMENSIONS; i++) {
+            final long delta = a[i] - b[i];
+            sum += delta * delta;
+        }
+
+        return sum;
+    }
+
+    private static int[] channels(final int argb) {
+        return new int[] {
+                (argb >> 16) & 0xff, (argb >> 8) & 0xff,
+                argb & 0xff, argb >>> 24
+        };
+    }
+}
@@ -0,0 +1,185 @@
+package com.jordanbunke.stip_parser.render;
+
+import com.jordanbunke.delta_time.image.GameImage;
+import com.jordanbunke.stip_parser.rep.IRLayer;
+import com.jordanbunke.stip_parser.rep.IRState;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+public final class Flattener {
+    private static final int MAX_CHANNEL = 0xff;
+    private static final int[] TRANSPARENT = new int[0];
+
+    private record Contribution(GameImage cel, int opacity) {}
+
+    public static GameImage flattenFrame(final IRState state, final int frame) {
+        return toImage(flatten(state, frame), state.width(), state.height());
+    }
+
+    public static int[] flatten(final IRState state, final int frame) {
+        return composite(contributions(state, frame),
+                state.width(), state.height(), Map.of(), new HashMap<>());
+    }
+
+    // frames with identical contributing cels share one GameImage instance
+    public static GameImage[] flattenFrames(final IRState state) {
+        final int[][] rasters = flattenAll(state);
+        final Map<int[], GameImage> images = new IdentityHashMap<>();
+
+        return Arrays.stream(rasters)
+                .map(raster -> images.computeIfAbsent(raster,
+                        r -> toImage(r, state.width(), state.height())))
+                .toArray(GameImage[]::new);
+    }
+
+    public static GameImage spriteSheet(final IRState state) {
+        return spriteSheet(state, state.frameCount());
+    }
+
+    public static GameImage spriteSheet(final IRState state, final int columns) {
+        final int w = state.width(), h = state.height(),
+                frameCount = state.frameCount(),
+                cols = Math.max(1, Math.min(columns, frameCount)),
+                rows = Math.max(1, (frameCount + cols - 1) / cols);
+        final int[][] rasters = flattenAll(state);
+        final GameImage sheet = new GameImage(w * cols, h * rows);
+
+        for (int i = 0; i < frameCount; i++)
+            sheet.setRGB((i % cols) * w, (i / cols) * h,
+                    w, h, rasters[i], 0, w);
+
+        return sheet.submit();
+    }
+
+    private static int[][] flattenAll(final IRState state) {
+        final int w = state.width(), h = state.height();
+
+        // frames are grouped by what contributes to them, so linked or
+        // otherwise identical frames are only composited once
+        final Map<List<Contribution>, List<Integer>> groups =
+                new LinkedHashMap<>();
+
+        for (int i = 0; i < state.frameCount(); i++)
+            groups.computeIfAbsent(contributions(state, i),
+                    k -> new ArrayList<>()).add(i);
+
+        final List<List<Contribution>> keys = new ArrayList<>(groups.keySet());
+        final int[][] composites = new int[keys.size()][];
+
+        // only rasters of cels that feed several composites are retained
+        final Map<GameImage, Integer> uses = new IdentityHashMap<>();
+
+        for (List<Contribution> key : keys)
+            for (Contribution contribution : key)
+                uses.merge(contribution.cel(), 1, Integer::sum);
+
+        final Map<GameImage, int[]> shared = new ConcurrentHashMap<>();
+
+        IntStream.range(0, keys.size()).parallel().forEach(i ->
+                composites[i] = composite(keys.get(i), w, h, uses, shared));
+
+        final int[][] rasters = new int[state.frameCount()][];
+
+        for (int i = 0; i < keys.size(); i++)
+            for (int frame : groups.get(keys.get(i)))
+                rasters[frame] = composites[i];
+
+        return rasters;
+    }
+
+    private static List<Contribution> contributions(
+            final IRState state, final int frame
+    ) {
+        final List<Contribution> contributions = new ArrayList<>();
+
+        // layers are drawn bottom to top in index order
+        for (IRLayer layer : state.layers()) {
+            final int opacity = (int) Math.round(
+                    Math.max(0d, Math.min(1d, layer.opacity())) * MAX_CHANNEL);
+
+            if (!layer.enabled() || opacity == 0)
+                continue;
+
+            contributions.add(new Contribution(layer.celsLinked()
+                    ? layer.linkedContent() : layer.getCel(frame), opacity));
+        }
+
+        return contributions;
+    }
+
+    private static int[] composite(
+            final List<Contribution> contributions, final int w, final int h,
+            final Map<GameImage, Integer> uses,
+            final Map<GameImage, int[]> shared
+    ) {
+        final int[] canvas = new int[w * h];
+
+        for (Contribution contribution : contributions) {
+            final GameImage cel = contribution.cel();
+            final int[] raster = uses.getOrDefault(cel, 0) > 1
+                    ? shared.computeIfAbsent(cel, c -> raster(c, w, h))
+                    : raster(cel, w, h);
+
+            if (raster != TRANSPARENT)
+                blend(canvas, raster, contribution.opacity());
+        }
+
+        return canvas;
+    }
+
+    private static int[] raster(final GameImage cel, final int w, final int h) {
+        final int[] raster = new int[w * h];
+        final int cw = Math.min(w, cel.getWidth()),
+                ch = Math.min(h, cel.getHeight());
+
+        cel.getRGB(0, 0, cw, ch, raster, 0, w);
+
+        int alpha = 0;
+
+        for (int argb : raster)
+            alpha |= argb;
+
+        return (alpha >>> 24) == 0 ? TRANSPARENT : raster;
+    }
+
+    // source-over of non-premultiplied ARGB, with the layer opacity applied
+    // to the source alpha
+    static void blend(final int[] canvas, final int[] source, final int opacity) {
+        for (int i = 0; i < canvas.length; i++) {
+            final int src = source[i];
+            final int sa = ((src >>> 24) * opacity + 127) / MAX_CHANNEL;
+
+            if (sa == 0)
+                continue;
+
+            final int dst = canvas[i], da = dst >>> 24;
+
+            if (sa == MAX_CHANNEL || da == 0) {
+                canvas[i] = (sa << 24) | (src & 0xffffff);
+                continue;
+            }
+
+            final int dw = da * (MAX_CHANNEL - sa),
+                    sw = sa * MAX_CHANNEL, total = sw + dw;
+
+            final int r = (((src >> 16) & 0xff) * sw +
+                    ((dst >> 16) & 0xff) * dw + total / 2) / total,
+                    g = (((src >> 8) & 0xff) * sw +
+                            ((dst >> 8) & 0xff) * dw + total / 2) / total,
+                    b = ((src & 0xff) * sw + (dst & 0xff) * dw +
+                            total / 2) / total,
+                    a = (total + MAX_CHANNEL / 2) / MAX_CHANNEL;
+
+            canvas[i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    static GameImage toImage(final int[] raster, final int w, final int h) {
+        final GameImage image = new GameImage(w, h);
+        image.setRGB(0, 0, w, h, raster, 0, w);
+
+        return image.submit();
+    }
+}
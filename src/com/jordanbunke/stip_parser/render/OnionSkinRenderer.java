@@ -0,0 +1,246 @@
+package com.jordanbunke.stip_parser.render;
+
+import com.jordanbunke.delta_time.image.GameImage;
+import com.jordanbunke.stip_parser.rep.IRLayer;
+import com.jordanbunke.stip_parser.rep.IROnionSkin;
+import com.jordanbunke.stip_parser.rep.IRState;
+
+import java.awt.*;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public final class OnionSkinRenderer {
+    private static final int MAX_CHANNEL = 0xff, LINKED = -1,
+            INITIAL_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final long DEF_CAPACITY = 64L << 20;
+
+    private final IRLayer layer;
+    private final int width, height, frameCount;
+    private final long capacity;
+    private final LinkedHashMap<SkinKey, int[]> skins;
+
+    private long size;
+
+    private record SkinKey(int frame, IROnionSkin.SkinType type, double hue) {}
+
+    public record Overlay(GameImage under, GameImage over) {}
+
+    private OnionSkinRenderer(
+            final IRLayer layer, final int width,
+            final int height, final int frameCount, final long capacity
+    ) {
+        this.layer = layer;
+        this.width = width;
+        this.height = height;
+        this.frameCount = frameCount;
+        this.capacity = capacity;
+
+        // least recently used skins are evicted first
+        skins = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+        size = 0L;
+    }
+
+    public static OnionSkinRenderer of(final IRState state, final int layer) {
+        return of(state, layer, DEF_CAPACITY);
+    }
+
+    // 'capacity' bounds the bytes of cached skins
+    public static OnionSkinRenderer of(
+            final IRState state, final int layer, final long capacity
+    ) {
+        return new OnionSkinRenderer(state.layers()[layer], state.width(),
+                state.height(), state.frameCount(), capacity);
+    }
+
+    // both overlays are blank for layers with their onion skins turned off
+    public Overlay render(final int frame) {
+        final IROnionSkin os = layer.onionSkin();
+        final int[] under = new int[width * height],
+                over = new int[width * height];
+
+        if (!layer.onionSkinOn())
+            return new Overlay(Flattener.toImage(under, width, height),
+                    Flattener.toImage(over, width, height));
+
+        // farthest skins are drawn first so that nearer ones end up on top
+        for (int k = os.lookBack(); k > 0; k--)
+            drawSkin(os.underBack() ? under : over, frame - k,
+                    os.skinTypeBack(), os.hueBack(), os.fadeFactorBack(), k);
+
+        for (int k = os.lookForward(); k > 0; k--)
+            drawSkin(os.underForward() ? under : over, frame + k,
+                    os.skinTypeForward(), os.hueForward(),
+                    os.fadeFactorForward(), k);
+
+        return new Overlay(Flattener.toImage(under, width, height),
+                Flattener.toImage(over, width, height));
+    }
+
+    // the layer's cel for 'frame' framed by its onion skins
+    public GameImage renderFrame(final int frame) {
+        final Overlay overlay = render(frame);
+        final int[] canvas = new int[width * height];
+
+        Flattener.blend(canvas, raster(overlay.under()), MAX_CHANNEL);
+        Flattener.blend(canvas, raster(celAt(frame)), MAX_CHANNEL);
+        Flattener.blend(canvas, raster(overlay.over()), MAX_CHANNEL);
+
+        return Flattener.toImage(canvas, width, height);
+    }
+
+    public void invalidate(final int frame) {
+        final int key = layer.celsLinked() ? LINKED : frame;
+
+        synchronized (skins) {
+            final Iterator<Map.Entry<SkinKey, int[]>> it =
+                    skins.entrySet().iterator();
+
+            while (it.hasNext()) {
+                final Map.Entry<SkinKey, int[]> entry = it.next();
+
+                if (entry.getKey().frame() == key) {
+                    size -= weigh(entry.getValue());
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (skins) {
+            skins.clear();
+            size = 0L;
+        }
+    }
+
+    public int cachedSkins() {
+        synchronized (skins) {
+            return skins.size();
+        }
+    }
+
+    public long cachedBytes() {
+        synchronized (skins) {
+            return size;
+        }
+    }
+
+    private void drawSkin(
+            final int[] target, final int frame,
+            final IROnionSkin.SkinType type, final double hue,
+            final double fadeFactor, final int distance
+    ) {
+        if (frame < 0 || frame >= frameCount)
+            return;
+
+        final int opacity = (int) Math.round(MAX_CHANNEL *
+                Math.pow(Math.max(0d, Math.min(1d, fadeFactor)), distance));
+
+        if (opacity == 0)
+            return;
+
+        // the hue only affects tinted and outlined skins
+        final SkinKey key = new SkinKey(layer.celsLinked() ? LINKED : frame,
+                type, type == IROnionSkin.SkinType.SIMPLE ? 0d : hue);
+
+        Flattener.blend(target, skinFor(key, frame, type, hue), opacity);
+    }
+
+    private int[] skinFor(
+            final SkinKey key, final int frame,
+            final IROnionSkin.SkinType type, final double hue
+    ) {
+        synchronized (skins) {
+            final int[] cached = skins.get(key);
+
+            if (cached != null)
+                return cached;
+        }
+
+        final int[] skin = skin(celAt(frame), type, hue);
+        final long weight = weigh(skin);
+
+        // a skin that could never fit is drawn but not retained
+        if (weight > capacity)
+            return skin;
+
+        synchronized (skins) {
+            final int[] replaced = skins.put(key, skin);
+
+            if (replaced != null)
+                size -= weigh(replaced);
+
+            size += weight;
+
+            final Iterator<int[]> eldest = skins.values().iterator();
+
+            while (size > capacity && eldest.hasNext()) {
+                size -= weigh(eldest.next());
+                eldest.remove();
+            }
+        }
+
+        return skin;
+    }
+
+    private static long weigh(final int[] skin) {
+        return (long) skin.length * Integer.BYTES;
+    }
+
+    private int[] skin(
+            final GameImage cel, final IROnionSkin.SkinType type,
+            final double hue
+    ) {
+        final int[] raster = raster(cel);
+        final int tint = Color.HSBtoRGB((float) hue, 1f, 1f) & 0xffffff;
+
+        return switch (type) {
+            case SIMPLE -> raster;
+            case TINTED -> {
+                for (int i = 0; i < raster.length; i++)
+                    raster[i] = (raster[i] & 0xff000000) | tint;
+
+                yield raster;
+            }
+            case OUTLINE -> outline(raster, tint);
+        };
+    }
+
+    // transparent pixels that border the cel's content along an edge
+    private int[] outline(final int[] raster, final int tint) {
+        final int[] outline = new int[raster.length];
+        final int opaqueTint = (MAX_CHANNEL << 24) | tint;
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int i = y * width + x;
+
+                if (raster[i] >>> 24 != 0)
+                    continue;
+
+                if ((x > 0 && raster[i - 1] >>> 24 != 0) ||
+                        (x + 1 < width && raster[i + 1] >>> 24 != 0) ||
+                        (y > 0 && raster[i - width] >>> 24 != 0) ||
+                        (y + 1 < height && raster[i + width] >>> 24 != 0))
+                    outline[i] = opaqueTint;
+            }
+        }
+
+        return outline;
+    }
+
+    private GameImage celAt(final int frame) {
+        return layer.celsLinked() ? layer.linkedContent() : layer.getCel(frame);
+    }
+
+    private int[] raster(final GameImage image) {
+        final int[] raster = new int[width * height];
+
+        image.getRGB(0, 0, Math.min(width, image.getWidth()),
+                Math.min(height, image.getHeight()), raster, 0, width);
+
+        return raster;
+    }
+}
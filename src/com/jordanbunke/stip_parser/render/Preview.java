@@ -0,0 +1,289 @@
+package com.jordanbunke.stip_parser.render;
+
+import com.jordanbunke.delta_time.error.GameError;
+import com.jordanbunke.delta_time.image.GameImage;
+import com.jordanbunke.stip_parser.LoadOptions;
+import com.jordanbunke.stip_parser.StipReader;
+import com.jordanbunke.stip_parser.StipVisitor;
+import com.jordanbunke.stip_parser.cache.FileIdentity;
+import com.jordanbunke.stip_parser.logic.XXHash64;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+public final class Preview {
+    public static final int COMPOSITE = -1;
+
+    private static final int MAX_CHANNEL = 0xff;
+    private static final String CACHE_EXTENSION = ".png",
+            TEMP_SUFFIX = ".tmp", IMAGE_FORMAT = "png";
+
+    private final int width, height, frame, layer;
+    private final Filter filter;
+    private final Path cacheDirectory;
+
+    public enum Filter {
+        NEAREST, BOX
+    }
+
+    public static Builder of(final int width, final int height) {
+        return new Builder(width, height);
+    }
+
+    public static class Builder {
+        private final int width, height;
+
+        private int frame, layer;
+        private Filter filter;
+        private Path cacheDirectory;
+
+        Builder(final int width, final int height) {
+            this.width = Math.max(1, width);
+            this.height = Math.max(1, height);
+
+            frame = 0;
+            layer = COMPOSITE;
+            filter = Filter.NEAREST;
+            cacheDirectory = null;
+        }
+
+        public Builder setFrame(final int frame) {
+            this.frame = Math.max(0, frame);
+            return this;
+        }
+
+        // a single layer is previewed as is, ignoring its opacity and
+        // whether it is enabled
+        public Builder setLayer(final int layer) {
+            this.layer = layer;
+            return this;
+        }
+
+        public Builder setFilter(final Filter filter) {
+            this.filter = filter;
+            return this;
+        }
+
+        // previews are not cached on disk if no cache directory is set
+        public Builder setCacheDirectory(final Path cacheDirectory) {
+            this.cacheDirectory = cacheDirectory;
+            return this;
+        }
+
+        public Preview build() {
+            return new Preview(this);
+        }
+    }
+
+    private Preview(final Builder builder) {
+        width = builder.width;
+        height = builder.height;
+        frame = builder.frame;
+        layer = builder.layer;
+        filter = builder.filter;
+        cacheDirectory = builder.cacheDirectory;
+    }
+
+    // the preview fits within the target size, preserving the aspect ratio
+    // of the project; projects are never upsampled
+    public GameImage render(final Path filepath) {
+        final Path cached = cachePath(filepath);
+        final GameImage hit = readFromCache(cached);
+
+        if (hit != null)
+            return hit;
+
+        final Sampler sampler = new Sampler();
+        StipReader.read(filepath, sampler, options());
+
+        final GameImage preview = Flattener.toImage(
+                sampler.canvas, sampler.tw, sampler.th);
+        writeToCache(cached, preview);
+
+        return preview;
+    }
+
+    public GameImage render(final String contents) {
+        final Sampler sampler = new Sampler();
+        StipReader.read(contents, sampler, options());
+
+        return Flattener.toImage(sampler.canvas, sampler.tw, sampler.th);
+    }
+
+    private LoadOptions options() {
+        final LoadOptions.Builder builder = new LoadOptions.Builder()
+                .setFrameRange(frame, frame + 1);
+
+        if (layer != COMPOSITE)
+            builder.setLayers(layer);
+
+        // box filtering needs every pixel, so only nearest-neighbour
+        // sampling can leave codes undecoded
+        if (filter == Filter.NEAREST)
+            builder.setSampleSize(width, height);
+
+        return builder.build();
+    }
+
+    private final class Sampler implements StipVisitor {
+        private int[] canvas = new int[1], columns = new int[1];
+        private int tw = 1, th = 1, pw = 1, ph = 1, cw, opacity;
+        private boolean enabled;
+
+        // premultiplied channel sums and pixel counts per target pixel
+        private long[] a, r, g, b;
+        private int[] count;
+
+        @Override
+        public void onState(final int width, final int height, final int frameCount) {
+            final LoadOptions fit = new LoadOptions.Builder()
+                    .setSampleSize(Preview.this.width, Preview.this.height)
+                    .build();
+
+            tw = fit.sampledWidth(width, height);
+            th = fit.sampledHeight(width, height);
+            pw = width;
+            ph = height;
+            canvas = new int[tw * th];
+
+            // cels map onto the preview in the project's coordinates, so a
+            // cel that is not the size of the project keeps its scale
+            columns = new int[pw];
+
+            for (int x = 0; x < pw; x++)
+                columns[x] = (int) ((long) x * tw / pw);
+        }
+
+        @Override
+        public void onLayerStart(
+                final int layer, final String name, final boolean enabled,
+                final boolean celsLinked, final double opacity
+        ) {
+            this.enabled = enabled || Preview.this.layer != COMPOSITE;
+            this.opacity = Preview.this.layer != COMPOSITE ? MAX_CHANNEL
+                    : (int) Math.round(Math.max(0d, Math.min(1d, opacity)) *
+                    MAX_CHANNEL);
+        }
+
+        @Override
+        public void onCelStart(
+                final int layer, final int frame, final int w, final int h
+        ) {
+            cw = Math.min(w, pw);
+
+            a = new long[tw * th];
+            r = new long[tw * th];
+            g = new long[tw * th];
+            b = new long[tw * th];
+            count = new int[tw * th];
+        }
+
+        @Override
+        public void onCelRow(
+                final int layer, final int frame, final int y, final int[] argbRow
+        ) {
+            if (!enabled || opacity == 0 || y >= ph)
+                return;
+
+            final int offset = (int) ((long) y * th / ph) * tw;
+
+            for (int x = 0; x < cw; x++) {
+                final int i = offset + columns[x],
+                        argb = argbRow[x], alpha = argb >>> 24;
+
+                a[i] += alpha;
+                r[i] += (long) ((argb >> 16) & 0xff) * alpha;
+                g[i] += (long) ((argb >> 8) & 0xff) * alpha;
+                b[i] += (long) (argb & 0xff) * alpha;
+                count[i]++;
+            }
+        }
+
+        @Override
+        public void onCelEnd(final int layer, final int frame) {
+            if (!enabled || opacity == 0)
+                return;
+
+            final int[] cel = new int[tw * th];
+
+            for (int i = 0; i < cel.length; i++) {
+                if (a[i] == 0L)
+                    continue;
+
+                final long half = a[i] / 2;
+                final int alpha = (int) ((a[i] + count[i] / 2) / count[i]);
+
+                cel[i] = (alpha << 24) | (int) ((r[i] + half) / a[i]) << 16 |
+                        (int) ((g[i] + half) / a[i]) << 8 |
+                        (int) ((b[i] + half) / a[i]);
+            }
+
+            Flattener.blend(canvas, cel, opacity);
+        }
+    }
+
+    private Path cachePath(final Path filepath) {
+        if (cacheDirectory == null)
+            return null;
+
+        // keyed by the file's identity and every setting of the preview
+        final FileIdentity identity = FileIdentity.of(filepath);
+        final byte[] path = identity.path().toString()
+                .getBytes(StandardCharsets.UTF_8);
+        final long key = new XXHash64().update(path, 0, path.length)
+                .update(identity.modified()).update(identity.size())
+                .update(width).update(height).update(frame).update(layer)
+                .update(filter.ordinal()).digest();
+
+        return cacheDirectory.resolve(
+                String.format("%016x", key) + CACHE_EXTENSION);
+    }
+
+    private static GameImage readFromCache(final Path cached) {
+        if (cached == null || !Files.isRegularFile(cached))
+            return null;
+
+        try {
+            final BufferedImage image = ImageIO.read(cached.toFile());
+
+            if (image == null)
+                return null;
+
+            final int w = image.getWidth(), h = image.getHeight();
+
+            return Flattener.toImage(image.getRGB(0, 0, w, h, null, 0, w), w, h);
+        } catch (IOException e) {
+            GameError.send("Discarding unreadable preview \"" + cached + "\".");
+            return null;
+        }
+    }
+
+    private void writeToCache(final Path cached, final GameImage preview) {
+        if (cached == null)
+            return;
+
+        Path temp = null;
+
+        // two renders of one preview may race; neither can see the other's
+        // PNG half-written, and the last to finish wins
+        try {
+            Files.createDirectories(cacheDirectory);
+            temp = Files.createTempFile(cacheDirectory,
+                    cached.getFileName().toString(), TEMP_SUFFIX);
+
+            ImageIO.write(preview, IMAGE_FORMAT, temp.toFile());
+            Files.move(temp, cached, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            GameError.send("Could not write preview \"" + cached + "\".");
+
+            if (temp != null)
+                temp.toFile().delete();
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.jordanbunke.stip_parser.rep;
+
+import com.jordanbunke.delta_time.image.GameImage;
+
+public interface CelSource {
+    GameImage getCel(int index);
+}
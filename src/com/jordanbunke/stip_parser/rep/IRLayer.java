@@ -5,12 +5,47 @@ import com.jordanbunke.delta_time.image.GameImage;
 public record IRLayer(
         String name, GameImage[] cels, GameImage linkedContent,
         double opacity, boolean enabled, boolean celsLinked,
-        boolean onionSkinOn, IROnionSkin onionSkin
+        boolean onionSkinOn, IROnionSkin onionSkin, CelSource celSource
 ) {
     private static final String DEF_NAME = "Layer";
 
+    public IRLayer(
+            final String name, final GameImage[] cels,
+            final GameImage linkedContent, final double opacity,
+            final boolean enabled, final boolean celsLinked,
+            final boolean onionSkinOn, final IROnionSkin onionSkin
+    ) {
+        this(name, cels, linkedContent, opacity, enabled,
+                celsLinked, onionSkinOn, onionSkin, null);
+    }
+
+    // the first cel of a lazily loaded layer stands in for its linked
+    // content, and is likewise only decoded on demand
+    public GameImage linkedContent() {
+        return linkedContent == null && celSource != null
+                ? celSource.getCel(0) : linkedContent;
+    }
+
+    // the cels of a lazily loaded layer are all decoded when the whole
+    // array is asked for; getCel(int) decodes only the one it returns
+    public GameImage[] cels() {
+        if (celSource == null)
+            return cels;
+
+        final GameImage[] resolved = new GameImage[cels.length];
+
+        for (int i = 0; i < cels.length; i++)
+            resolved[i] = getCel(i);
+
+        return resolved;
+    }
+
     public GameImage getCel(final int index) {
-        return cels[index];
+        final GameImage cel = cels[index];
+
+        // cels of lazily loaded layers are only decoded on demand
+        return cel == null && celSource != null
+                ? celSource.getCel(index) : cel;
     }
 
     public static Builder of(final int w, final int h) {
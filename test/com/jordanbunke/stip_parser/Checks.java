@@ -0,0 +1,114 @@
+package com.jordanbunke.stip_parser;
+
+import com.jordanbunke.delta_time.image.GameImage;
+import com.jordanbunke.stip_parser.rep.IRLayer;
+import com.jordanbunke.stip_parser.rep.IROnionSkin;
+import com.jordanbunke.stip_parser.rep.IRState;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Shared by the checks in this directory, which are run as plain main
+// classes like Experiment and stop at the first failure
+public final class Checks {
+    public static void check(final boolean passed, final String what) {
+        if (!passed)
+            throw new IllegalStateException("Failed: " + what);
+
+        System.out.println("Passed: " + what);
+    }
+
+    // a mix of transparent, opaque and translucent pixels
+    public static GameImage randomImage(
+            final int width, final int height, final long seed
+    ) {
+        final Random random = new Random(seed);
+        final GameImage image = new GameImage(width, height);
+
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++)
+                image.setRGB(x, y, switch (random.nextInt(3)) {
+                    case 0 -> 0;
+                    case 1 -> 0xff000000 | random.nextInt(0x1000000);
+                    default -> random.nextInt();
+                });
+
+        return image;
+    }
+
+    // an unlinked layer, a linked layer with an onion skin, and a disabled
+    // layer whose frames are all the same
+    public static IRState sampleState(
+            final int width, final int height, final int frameCount
+    ) {
+        final GameImage[] cels = new GameImage[frameCount];
+
+        for (int i = 0; i < frameCount; i++)
+            cels[i] = randomImage(width, height, i);
+
+        final GameImage[] repeated = new GameImage[frameCount];
+        Arrays.fill(repeated, cels[0]);
+
+        final double[] durations = new double[frameCount];
+
+        for (int i = 0; i < frameCount; i++)
+            durations[i] = 0.5 + i;
+
+        return IRState.of(width, height, frameCount,
+                IRLayer.of(width, height).setName("Base")
+                        .setCels(cels).setOpacity(0.5).build(),
+                IRLayer.of(randomImage(width, height, -1L)).setName("Linked")
+                        .setOnionSkin(new IROnionSkin.Builder().setLookBack(3)
+                                .setSkinTypeBack(IROnionSkin.SkinType.TINTED)
+                                .build()).build(),
+                IRLayer.of(width, height).setName("Repeated")
+                        .setCels(repeated).setEnabled(false).build())
+                .setFrameDurations(durations).build();
+    }
+
+    // transparent pixels are equal whatever their RGB
+    public static boolean samePixels(final GameImage a, final GameImage b) {
+        if (a.getWidth() != b.getWidth() || a.getHeight() != b.getHeight())
+            return false;
+
+        for (int y = 0; y < a.getHeight(); y++)
+            for (int x = 0; x < a.getWidth(); x++)
+                if (visible(a.getRGB(x, y)) != visible(b.getRGB(x, y)))
+                    return false;
+
+        return true;
+    }
+
+    public static boolean sameState(final IRState a, final IRState b) {
+        if (a.width() != b.width() || a.height() != b.height() ||
+                a.frameCount() != b.frameCount() ||
+                a.layers().length != b.layers().length ||
+                !Arrays.equals(a.frameDurations(), b.frameDurations()))
+            return false;
+
+        for (int l = 0; l < a.layers().length; l++) {
+            final IRLayer x = a.layers()[l], y = b.layers()[l];
+
+            if (!x.name().equals(y.name()) || x.enabled() != y.enabled() ||
+                    x.celsLinked() != y.celsLinked() ||
+                    x.opacity() != y.opacity() ||
+                    !x.onionSkin().equals(y.onionSkin()))
+                return false;
+
+            // linked layers may hold a single cel
+            if (x.celsLinked()) {
+                if (!samePixels(x.linkedContent(), y.linkedContent()))
+                    return false;
+            } else
+                for (int f = 0; f < a.frameCount(); f++)
+                    if (!samePixels(x.getCel(f), y.getCel(f)))
+                        return false;
+        }
+
+        return true;
+    }
+
+    private static int visible(final int argb) {
+        return argb >>> 24 == 0 ? 0 : argb;
+    }
+}
@@ -0,0 +1,65 @@
+package com.jordanbunke.stip_parser;
+
+import com.jordanbunke.delta_time.image.GameImage;
+import com.jordanbunke.stip_parser.cache.CelCache;
+import com.jordanbunke.stip_parser.rep.IRLayer;
+import com.jordanbunke.stip_parser.rep.IRState;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Objects;
+
+import static com.jordanbunke.stip_parser.Checks.*;
+
+public class LazyLoading {
+    public static void main(String[] args) throws IOException {
+        final Path file = Files.createTempFile("lazy", ".stip");
+
+        try {
+            // large enough that frames straddle the reader's buffer
+            final IRState state = sampleState(140, 90, 3);
+            ParserSerializer.save(state, file);
+
+            final CelCache cache = new CelCache(1L << 24);
+            final IRState lazy = ParserSerializer.loadLazily(file, cache);
+
+            check(cache.stats().misses() == 0,
+                    "no frame is decoded by loading");
+            check(samePixels(lazy.layers()[0].getCel(1),
+                    state.layers()[0].getCel(1)) &&
+                    cache.stats().misses() == 1,
+                    "a frame is decoded when it is asked for");
+            check(Arrays.stream(lazy.layers()[0].cels())
+                    .allMatch(Objects::nonNull), "cels() resolves every frame");
+            check(sameState(state, lazy), "frames across buffer refills");
+
+            final int cached = cache.stats().count();
+            cache.invalidate(file);
+            check(cache.stats().count() == 0 &&
+                    cache.stats().evictions() == cached,
+                    "invalidating a file counts its cels as evictions");
+
+            // a multi-byte name, in a linked layer from before file
+            // standard 1.1 that stores its frames
+            Files.writeString(file, "{file_standard:1.0}{dims:2,1}" +
+                    "{frame_count:2}{frame_durations:1.0,1.0}{layers:" +
+                    "{layer:{layer_name:Bäse}{is_enabled:true}" +
+                    "{is_linked:true}{opacity:1.0}{frames:" +
+                    "{frame:{dims:2,1}{cols:ff0000,t}}," +
+                    "{frame:{dims:2,1}{cols:00ff00,t}}}}}");
+
+            final IRLayer layer =
+                    ParserSerializer.loadLazily(file, cache).layers()[0];
+            final GameImage linked = layer.linkedContent();
+
+            check(layer.name().equals("Bäse"), "names keep their characters");
+            check(layer.celsLinked() && linked != null &&
+                    linked.getRGB(0, 0) == 0xffff0000,
+                    "a legacy linked layer resolves its first frame");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.jordanbunke.stip_parser;
+
+import com.jordanbunke.delta_time.image.GameImage;
+import com.jordanbunke.stip_parser.cache.CelCache;
+import com.jordanbunke.stip_parser.rep.IRLayer;
+import com.jordanbunke.stip_parser.rep.IRState;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.jordanbunke.stip_parser.Checks.*;
+
+public class LoadEquivalence {
+    public static void main(String[] args) throws IOException {
+        final Path file = Files.createTempFile("load", ".stip");
+
+        try {
+            final IRState state = sampleState(12, 7, 4);
+            ParserSerializer.save(state, file);
+
+            compare(file, "saved project");
+            check(sameState(state, ParserSerializer.load(file)),
+                    "a saved project loads as it was saved");
+
+            // too few and too many codes, and one invalid code
+            Files.writeString(file, "{file_standard:1.3}{dims:3,2}" +
+                    "{frame_count:2}{frame_durations:1.0,1.0}{layers:" +
+                    "{layer:{layer_name:x}{is_enabled:true}{is_linked:false}" +
+                    "{opacity:1.0}{onion_skin:}{frames:" +
+                    "{frame:{dims:3,2}{cols:ff0000,00ff00,zzzzzz,ffffff}}," +
+                    "{frame:{dims:3,2}{cols:ff0000,00ff00,0000ff,ffffff," +
+                    "000000,123456,abcdef}}}}}");
+            compare(file, "malformed cels");
+
+            // a file from before linked layers and onion skins
+            ParserSerializer.save(state, file);
+            Files.writeString(file, Files.readString(file).replace(
+                    "{file_standard:" + Standards.NATIVE + "}",
+                    "{file_standard:1.0}"));
+            compare(file, "file standard 1.0");
+
+            // a narrow cel after a wide one
+            Files.writeString(file, "{file_standard:1.3}{dims:4,1}" +
+                    "{frame_count:2}{frame_durations:1.0,1.0}{layers:" +
+                    "{layer:{layer_name:x}{is_enabled:true}{is_linked:false}" +
+                    "{opacity:1.0}{onion_skin:}{frames:" +
+                    "{frame:{dims:4,1}{cols:ff0000,00ff00,0000ff,ffffff}}," +
+                    "{frame:{dims:2,1}{cols:000000,123456}}}}}");
+            compare(file, "off-size cels");
+            checkRows(file);
+
+            checkOffSizeSelection(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void checkRows(final Path file) {
+        final List<int[]> rows = new ArrayList<>();
+
+        StipReader.read(file, new StipVisitor() {
+            @Override
+            public void onCelRow(
+                    final int layer, final int frame, final int y,
+                    final int[] argbRow
+            ) {
+                rows.add(argbRow.clone());
+            }
+        });
+
+        check(rows.size() == 2 && rows.get(0).length == 4 &&
+                        Arrays.equals(rows.get(1),
+                                new int[] { 0xff000000, 0xff123456 }),
+                "rows hold exactly the width of their cel");
+    }
+
+    // a 4x4 cel in an 8x8 project is selected at the project's scale
+    private static void checkOffSizeSelection(final Path file)
+            throws IOException {
+        final GameImage cel = randomImage(4, 4, 7L);
+        final IRState state = IRState.of(8, 8, 1, IRLayer.of(8, 8)
+                .setCels(cel).build()).build();
+        ParserSerializer.save(state, file);
+
+        final GameImage sampled = ParserSerializer.load(file,
+                new LoadOptions.Builder().setSampleSize(4, 4).build())
+                .layers()[0].getCel(0);
+
+        check(sampled.getWidth() == 2 && sampled.getHeight() == 2 &&
+                        sampled.getRGB(1, 1) == cel.getRGB(3, 3),
+                "an off-size cel is sampled at the project's scale");
+
+        final GameImage cropped = ParserSerializer.load(file,
+                new LoadOptions.Builder().setRegion(2, 1, 6, 6).build())
+                .layers()[0].getCel(0);
+
+        check(cropped.getWidth() == 2 && cropped.getHeight() == 3 &&
+                        cropped.getRGB(0, 0) == cel.getRGB(2, 1),
+                "an off-size cel is cropped at the project's coordinates");
+
+        final GameImage outside = ParserSerializer.load(file,
+                new LoadOptions.Builder().setRegion(5, 5, 3, 3).build())
+                .layers()[0].getCel(0);
+
+        check(outside.getWidth() == 1 && outside.getRGB(0, 0) >>> 24 == 0,
+                "an off-size cel outside of the region is blank");
+    }
+
+    private static void compare(final Path file, final String what)
+            throws IOException {
+        final IRState text = ParserSerializer.load(Files.readString(file)),
+                path = ParserSerializer.load(file),
+                lazy = ParserSerializer.loadLazily(file, new CelCache(1L << 20));
+
+        check(sameState(text, path), what + ": load(String) = load(Path)");
+        check(sameState(text, lazy), what + ": load(String) = loadLazily");
+    }
+}
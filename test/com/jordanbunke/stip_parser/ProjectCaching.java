@@ -0,0 +1,53 @@
+package com.jordanbunke.stip_parser;
+
+import com.jordanbunke.stip_parser.cache.ProjectCache;
+import com.jordanbunke.stip_parser.rep.IRState;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static com.jordanbunke.stip_parser.Checks.*;
+
+public class ProjectCaching {
+    public static void main(String[] args) throws IOException {
+        final Path directory = Files.createTempDirectory("cache");
+
+        try {
+            final Path file = directory.resolve("project.stip");
+            final IRState state = sampleState(6, 4, 2);
+            ParserSerializer.save(state, file);
+
+            final ProjectCache cache = new ProjectCache(1L << 20, directory);
+            final IRState first = cache.load(file);
+
+            check(cache.load(file) == first && cache.stats().hits() == 1,
+                    "a hit returns the cached state itself");
+
+            // the same content with trailing whitespace is a different file
+            final String contents = Files.readString(file);
+            check(cache.load(contents + "\n") != first,
+                    "content of another length is not a hit");
+
+            final ProjectCache fresh = new ProjectCache(1L << 20, directory);
+            check(sameState(fresh.load(file), state) &&
+                    fresh.stats().diskHits() == 1,
+                    "a new cache reads the entry back from disk");
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            BinaryForm.write(state, out);
+            check(sameState(BinaryForm.read(
+                    new ByteArrayInputStream(out.toByteArray())), state),
+                    "the binary form round trips");
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder())
+                        .forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.jordanbunke.stip_parser;
+
+import com.jordanbunke.delta_time.image.GameImage;
+import com.jordanbunke.stip_parser.rep.IRLayer;
+import com.jordanbunke.stip_parser.rep.IRState;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.jordanbunke.stip_parser.Checks.*;
+
+public class UpgradeEquivalence {
+    // a row of color codes, as written one per line
+    private static final Pattern CODE_ROW =
+            Pattern.compile("(?m)^\\t+[0-9a-ft,]+$");
+
+    public static void main(String[] args) throws IOException {
+        final Path file = Files.createTempFile("upgrade", ".stip");
+
+        try {
+            ParserSerializer.save(sampleState(10, 6, 3), file);
+
+            // from before onion skins, which the upgrade gives defaults
+            final String saved = Files.readString(file),
+                    old = saved.replace(
+                            "{file_standard:" + Standards.NATIVE + "}",
+                            "{file_standard:1.1}");
+
+            upgrade(file, old, "file standard 1.1");
+            upgrade(file, uppercase(old), "uppercase codes");
+
+            // linked layers from before linked_layer blocks stored frames
+            upgrade(file, legacyLinked(1), "a legacy linked layer");
+            check(Files.readString(file).contains("{linked_layer:"),
+                    "a legacy linked layer is written as a linked_layer");
+            upgrade(file, legacyLinked(3),
+                    "a legacy linked layer with several frames");
+
+            // an unlinked layer whose frames are all the same stays unlinked
+            check(!ParserSerializer.load(file).layers()[1].celsLinked(),
+                    "identical frames of an unlinked layer are kept");
+
+            final StringWriter again = new StringWriter();
+            StandardUpgrader.upgrade(Files.readString(file), again);
+            check(again.toString().equals(Files.readString(file)),
+                    "upgrading an upgraded file changes nothing");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void upgrade(
+            final Path file, final String contents, final String what
+    ) throws IOException {
+        Files.writeString(file, contents);
+
+        final IRState before = ParserSerializer.load(contents);
+        StandardUpgrader.upgrade(file, file);
+        final IRState after = ParserSerializer.load(file);
+
+        boolean same = before.frameCount() == after.frameCount() &&
+                before.layers().length == after.layers().length,
+                linked = same;
+
+        for (int l = 0; same && l < before.layers().length; l++) {
+            linked &= before.layers()[l].celsLinked() ==
+                    after.layers()[l].celsLinked();
+
+            for (int f = 0; f < before.frameCount(); f++)
+                same &= samePixels(cel(before.layers()[l], f),
+                        cel(after.layers()[l], f));
+        }
+
+        check(same, what + ": every frame keeps its pixels");
+        check(linked, what + ": every layer stays linked or unlinked");
+    }
+
+    // a linked layer and an unlinked one with identical frames, at 1.0
+    private static String legacyLinked(final int frameCount) {
+        final String frame = "{frame:{dims:2,1}{cols:ff0000,t}}",
+                frames = String.join(",", Collections.nCopies(
+                        frameCount, frame));
+
+        return "{file_standard:1.0}{dims:2,1}{frame_count:" + frameCount +
+                "}{frame_durations:" + String.join(",",
+                Collections.nCopies(frameCount, "1.0")) + "}{layers:" +
+                "{layer:{layer_name:a}{is_enabled:true}{is_linked:true}" +
+                "{opacity:1.0}{frames:" + frames + "}}," +
+                "{layer:{layer_name:b}{is_enabled:true}{is_linked:false}" +
+                "{opacity:1.0}{frames:" + frames + "}}}";
+    }
+
+    private static GameImage cel(final IRLayer layer, final int frame) {
+        return layer.celsLinked() ? layer.linkedContent() : layer.getCel(frame);
+    }
+
+    private static String uppercase(final String contents) {
+        final Matcher rows = CODE_ROW.matcher(contents);
+        final StringBuilder sb = new StringBuilder();
+
+        // 't' is the only code that must stay lowercase
+        while (rows.find())
+            rows.appendReplacement(sb, rows.group()
+                    .toUpperCase().replace('T', 't'));
+
+        rows.appendTail(sb);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,61 @@
+package com.jordanbunke.stip_parser;
+
+import com.jordanbunke.delta_time.image.GameImage;
+import com.jordanbunke.stip_parser.cache.CelCache;
+import com.jordanbunke.stip_parser.rep.IRLayer;
+import com.jordanbunke.stip_parser.rep.IRState;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.jordanbunke.stip_parser.Checks.*;
+
+public class WriterEquivalence {
+    public static void main(String[] args) throws IOException {
+        final IRState sample = sampleState(9, 5, 3);
+
+        // one cel that is not the size of the project
+        final IRLayer base = sample.layers()[0];
+        final GameImage[] cels = base.cels().clone();
+        cels[1] = randomImage(4, 7, 42L);
+
+        final IRLayer[] layers = sample.layers().clone();
+        layers[0] = new IRLayer(base.name(), cels, base.linkedContent(),
+                base.opacity(), base.enabled(), base.celsLinked(),
+                base.onionSkinOn(), base.onionSkin());
+
+        final IRState state = new IRState(sample.width(), sample.height(),
+                sample.frameCount(), sample.frameDurations(), layers);
+
+        final Path file = Files.createTempFile("writer", ".stip");
+
+        try {
+            ParserSerializer.save(state, file);
+
+            check(Files.readString(file).equals(write(state)),
+                    "StipWriter writes what save writes");
+
+            // lazily loaded cels are resolved as they are written
+            check(Files.readString(file).equals(write(ParserSerializer
+                            .loadLazily(file, new CelCache(1L << 20)))),
+                    "a lazily loaded project streams back to the same file");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static String write(final IRState state) {
+        final StringWriter out = new StringWriter();
+
+        try (StipWriter writer = StipWriter.of(state.width(), state.height(),
+                state.frameCount()).setFrameDurations(state.frameDurations())
+                .open(out)) {
+            for (IRLayer layer : state.layers())
+                ParserSerializer.writeLayer(writer, layer);
+        }
+
+        return out.toString();
+    }
+}
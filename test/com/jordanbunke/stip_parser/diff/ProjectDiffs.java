@@ -0,0 +1,86 @@
+package com.jordanbunke.stip_parser.diff;
+
+import com.jordanbunke.delta_time.image.GameImage;
+import com.jordanbunke.stip_parser.ParserSerializer;
+import com.jordanbunke.stip_parser.logic.XXHash64;
+import com.jordanbunke.stip_parser.rep.IRLayer;
+import com.jordanbunke.stip_parser.rep.IRState;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import static com.jordanbunke.stip_parser.Checks.*;
+
+public class ProjectDiffs {
+    private static final String HEADER = "{file_standard:1.3}{dims:2,1}" +
+            "{frame_count:1}{frame_durations:1.0}{layers:{layer:" +
+            "{layer_name:x}{is_enabled:true}{is_linked:false}{opacity:1.0}" +
+            "{onion_skin:}{frames:{frame:{dims:2,1}{cols:";
+
+    public static void main(String[] args) throws IOException {
+        final Path before = Files.createTempFile("before", ".stip"),
+                after = Files.createTempFile("after", ".stip");
+
+        try {
+            final IRState state = sampleState(6, 4, 3);
+            ParserSerializer.save(state, before);
+            Files.copy(before, after, StandardCopyOption.REPLACE_EXISTING);
+
+            check(ProjectDiff.compare(before, after, true).identical(),
+                    "a copy is identical");
+
+            // the same pixels, written differently
+            Files.writeString(before, HEADER + "ff000000,abcdef}}}}}");
+            Files.writeString(after, HEADER + "t,ABCDEFff}}}}}");
+
+            check(ProjectDiff.compare(before, after).identical() &&
+                            ProjectSignature.of(before).layers().equals(
+                                    ProjectSignature.of(after).layers()),
+                    "codes written differently hash the same");
+
+            // one changed cel
+            ParserSerializer.save(state, before);
+            ParserSerializer.save(withCel(state, 1,
+                    randomImage(6, 4, 99L)), after);
+
+            final List<ProjectDiff.LayerChange> changes =
+                    ProjectDiff.compare(before, after, true).layers();
+
+            check(changes.size() == 1 &&
+                            changes.get(0).changedFrames().equals(List.of(1)) &&
+                            changes.get(0).pixels().size() == 1,
+                    "a changed cel is found and bounded");
+
+            check(ProjectSignature.of(after).equals(ProjectSignature.of(
+                            Files.readAllBytes(after))),
+                    "streamed and in-memory signatures agree");
+
+            final Path missing = before.resolveSibling("missing.stip");
+            check(ProjectSignature.of(missing).fileHash() ==
+                            XXHash64.hash(new byte[0]),
+                    "an unreadable file is signed as if it were empty");
+        } finally {
+            Files.deleteIfExists(before);
+            Files.deleteIfExists(after);
+        }
+    }
+
+    private static IRState withCel(
+            final IRState state, final int frame, final GameImage cel
+    ) {
+        final IRLayer base = state.layers()[0];
+        final GameImage[] cels = base.cels().clone();
+        cels[frame] = cel;
+
+        final IRLayer[] layers = state.layers().clone();
+        layers[0] = new IRLayer(base.name(), cels, base.linkedContent(),
+                base.opacity(), base.enabled(), base.celsLinked(),
+                base.onionSkinOn(), base.onionSkin());
+
+        return new IRState(state.width(), state.height(),
+                state.frameCount(), state.frameDurations(), layers);
+    }
+}
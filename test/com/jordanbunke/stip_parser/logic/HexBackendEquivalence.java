@@ -0,0 +1,53 @@
+package com.jordanbunke.stip_parser.logic;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.jordanbunke.stip_parser.Checks.check;
+
+public class HexBackendEquivalence {
+    private static final int SAMPLES = 1 << 20;
+    private static final String DIGITS = "0123456789abcdefABCDEF";
+
+    public static void main(String[] args) {
+        final Random random = new Random(35L);
+        boolean encodes = true, decodes = true, rejects = true;
+
+        for (int i = 0; i < SAMPLES; i++) {
+            final int value = random.nextInt();
+            final long digits = HexBackend.SCALAR.encode(value);
+
+            encodes &= HexBackend.SWAR.encode(value) == digits;
+            decodes &= HexBackend.SWAR.decode(digits) == (value & 0xffffffffL);
+
+            // mostly hex digits of either case, with some other ASCII
+            long text = 0L;
+
+            for (int j = 0; j < Long.BYTES; j++)
+                text = (text << 8) | (random.nextInt(8) == 0
+                        ? random.nextInt(0x80)
+                        : DIGITS.charAt(random.nextInt(DIGITS.length())));
+
+            rejects &= HexBackend.SWAR.decode(text) ==
+                    HexBackend.SCALAR.decode(text);
+        }
+
+        check(encodes, "SWAR encodes like SCALAR");
+        check(decodes, "SWAR decodes what SCALAR encodes");
+        check(rejects, "SWAR accepts and rejects the same text as SCALAR");
+
+        // whole runs through the selected backend
+        final int[] argb = new int[4096], decoded = new int[argb.length];
+
+        for (int i = 0; i < argb.length; i++)
+            argb[i] = random.nextInt(4) == 0 ? 0 : random.nextInt();
+
+        final StringBuilder sb = new StringBuilder();
+        ColorCodec.encodeRun(argb, 0, argb.length, true, sb);
+        final char[] text = sb.toString().toCharArray();
+
+        check(ColorCodec.decodeRun(text, 0, text.length, decoded) ==
+                argb.length && Arrays.equals(argb, decoded),
+                ColorCodec.backend() + " run round trip");
+    }
+}
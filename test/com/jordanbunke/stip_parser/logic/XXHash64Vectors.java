@@ -0,0 +1,36 @@
+package com.jordanbunke.stip_parser.logic;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static com.jordanbunke.stip_parser.Checks.check;
+
+public class XXHash64Vectors {
+    public static void main(String[] args) {
+        // reference values of the xxHash64 specification, seed 0
+        check(hash("") == 0xEF46DB3751D8E999L, "empty input");
+        check(hash("a") == 0xD24EC4F1A98C6E5BL, "one byte");
+        check(hash("abc") == 0x44BC2CF5AD770999L, "three bytes");
+        check(hash("Nobody inspects the spammish repetition") ==
+                0xFBCEA83C8A378BF1L, "more than one stripe");
+
+        // updates in pieces must hash the same as one update
+        final byte[] bytes = new byte[1000];
+        new Random(7L).nextBytes(bytes);
+
+        final XXHash64 pieces = new XXHash64();
+
+        for (int offset = 0, length = 1; offset < bytes.length;
+             offset += length, length = length % 37 + 1)
+            pieces.update(bytes, offset,
+                    Math.min(length, bytes.length - offset));
+
+        check(pieces.digest() == XXHash64.hash(bytes), "piecewise updates");
+        check(new XXHash64().update(bytes, 0, bytes.length).reset()
+                .digest() == hash(""), "reset");
+    }
+
+    private static long hash(final String s) {
+        return XXHash64.hash(s.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,61 @@
+package com.jordanbunke.stip_parser.palette;
+
+import java.util.Random;
+
+import static com.jordanbunke.stip_parser.Checks.check;
+
+public class PaletteMapperEquivalence {
+    private static final int SAMPLES = 1 << 16;
+
+    public static void main(String[] args) {
+        final Random random = new Random(36L);
+
+        for (int size : new int[] { 1, 2, 16, 256 }) {
+            final int[] palette = new int[size];
+
+            for (int i = 0; i < size; i++)
+                palette[i] = random.nextInt();
+
+            final PaletteMapper mapper = PaletteMapper.of(palette);
+            boolean same = true;
+
+            for (int i = 0; i < SAMPLES; i++) {
+                final int argb = random.nextInt();
+                same &= mapper.map(argb) == nearest(palette, argb);
+            }
+
+            check(same, size + " entries: the k-d tree finds the nearest entry");
+        }
+
+        check(PaletteMapper.of(0xff000002, 0xff000000).map(0xff000001) ==
+                0xff000002, "ties go to the earlier entry");
+        check(PaletteMapper.of(0xff000000).map(0x00ffffff) == 0,
+                "transparent pixels stay transparent");
+    }
+
+    // every entry is measured; ties go to the earliest entry
+    private static int nearest(final int[] palette, final int argb) {
+        if (argb >>> 24 == 0)
+            return 0;
+
+        int best = 0;
+        long bestDistance = Long.MAX_VALUE;
+
+        for (int i = 0; i < palette.length; i++) {
+            long distance = 0L;
+
+            for (int shift = 0; shift < Integer.SIZE; shift += 8) {
+                final long d = ((argb >>> shift) & 0xff) -
+                        ((palette[i] >>> shift) & 0xff);
+                distance += d * d;
+            }
+
+            if (distance < bestDistance) {
+                best = i;
+                bestDistance = distance;
+            }
+        }
+
+        return palette[best];
+    }
+}
@@ -0,0 +1,68 @@
+package com.jordanbunke.stip_parser.render;
+
+import com.jordanbunke.delta_time.image.GameImage;
+import com.jordanbunke.stip_parser.rep.IRLayer;
+import com.jordanbunke.stip_parser.rep.IROnionSkin;
+import com.jordanbunke.stip_parser.rep.IRState;
+
+import static com.jordanbunke.stip_parser.Checks.*;
+
+public class OnionSkinRendering {
+    private static final int WIDTH = 6, HEIGHT = 5, FRAMES = 8;
+
+    public static void main(String[] args) {
+        final IROnionSkin os = new IROnionSkin.Builder().setLookBack(3)
+                .setSkinTypeBack(IROnionSkin.SkinType.TINTED).setLookForward(2)
+                .setSkinTypeForward(IROnionSkin.SkinType.OUTLINE).build();
+
+        final OnionSkinRenderer off = OnionSkinRenderer.of(state(os, false), 0),
+                on = OnionSkinRenderer.of(state(os, true), 0);
+
+        final OnionSkinRenderer.Overlay blank = off.render(4);
+        check(blank(blank.under()) && blank(blank.over()) &&
+                        off.cachedSkins() == 0,
+                "layers with onion skins off render blank overlays");
+        check(!blank(on.render(4).over()), "layers with onion skins on do not");
+
+        // room for two skins only
+        final long skinBytes = (long) WIDTH * HEIGHT * Integer.BYTES;
+        final OnionSkinRenderer bounded =
+                OnionSkinRenderer.of(state(os, true), 0, 2 * skinBytes);
+
+        for (int frame = 0; frame < FRAMES; frame++) {
+            check(samePixels(bounded.renderFrame(frame), on.renderFrame(frame)),
+                    "frame " + frame + " renders the same with a bounded cache");
+            check(bounded.cachedBytes() <= 2 * skinBytes,
+                    "the cache stays within its bound at frame " + frame);
+        }
+
+        check(on.cachedBytes() == on.cachedSkins() * skinBytes,
+                "cached bytes are the weight of the cached skins");
+
+        on.invalidate(4);
+        bounded.invalidateAll();
+        check(on.cachedBytes() == on.cachedSkins() * skinBytes &&
+                        bounded.cachedBytes() == 0L,
+                "invalidation releases the weight of dropped skins");
+    }
+
+    private static IRState state(final IROnionSkin os, final boolean on) {
+        final GameImage[] cels = new GameImage[FRAMES];
+
+        for (int i = 0; i < FRAMES; i++)
+            cels[i] = randomImage(WIDTH, HEIGHT, i);
+
+        return IRState.of(WIDTH, HEIGHT, FRAMES, IRLayer.of(WIDTH, HEIGHT)
+                .setCels(cels).setOnionSkin(os).setOnionSkinOn(on).build())
+                .build();
+    }
+
+    private static boolean blank(final GameImage image) {
+        for (int y = 0; y < image.getHeight(); y++)
+            for (int x = 0; x < image.getWidth(); x++)
+                if (image.getRGB(x, y) >>> 24 != 0)
+                    return false;
+
+        return true;
+    }
+}
@@ -0,0 +1,48 @@
+package com.jordanbunke.stip_parser.render;
+
+import com.jordanbunke.delta_time.image.GameImage;
+import com.jordanbunke.stip_parser.ParserSerializer;
+import com.jordanbunke.stip_parser.rep.IRLayer;
+import com.jordanbunke.stip_parser.rep.IRState;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.jordanbunke.stip_parser.Checks.*;
+
+public class PreviewSampling {
+    public static void main(String[] args) throws IOException {
+        final Path file = Files.createTempFile("preview", ".stip");
+
+        try {
+            // an opaque 4x4 cel in the corner of an 8x8 project
+            final GameImage cel = new GameImage(4, 4);
+
+            for (int y = 0; y < 4; y++)
+                for (int x = 0; x < 4; x++)
+                    cel.setRGB(x, y, 0xff000000 | (x << 16) | (y << 8));
+
+            ParserSerializer.save(IRState.of(8, 8, 1, IRLayer.of(8, 8)
+                    .setCels(cel).build()).build(), file);
+
+            for (Preview.Filter filter : Preview.Filter.values()) {
+                final GameImage preview = Preview.of(4, 4)
+                        .setFilter(filter).build().render(file);
+
+                boolean corner = preview.getWidth() == 4 &&
+                        preview.getHeight() == 4;
+
+                for (int y = 0; y < 4; y++)
+                    for (int x = 0; x < 4; x++)
+                        corner &= (preview.getRGB(x, y) >>> 24 != 0) ==
+                                (x < 2 && y < 2);
+
+                check(corner, filter + ": an off-size cel fills only " +
+                        "its part of the preview");
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}